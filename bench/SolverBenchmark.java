@@ -0,0 +1,346 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks for the grid set up, propagation, undo log, candidate
+ * generation and full solve, on the example puzzles and on larger
+ * generated puzzles. The full solve is run both by the solver's own
+ * search and by the SAT backend, so the two can be compared.
+ *
+ * Each benchmark runs a number of warm up iterations and then measurement
+ * iterations of a fixed length. Only the operations themselves are timed,
+ * set up done before them is not. Operations taking well under a
+ * microsecond (a checkpoint, a revert, a single update) are timed in
+ * batches, with the set up for the whole batch done before it, so that
+ * neither reading the clock nor the set up touching memory between
+ * operations swamps what is measured. As well as the time per operation
+ * the bytes allocated per operation and the garbage collections during
+ * measurement are reported, much like a gc profiler.
+ *
+ * The benchmarks live outside src since they are not part of the program.
+ * To build and run from the project directory:
+ *     javac -d bin src/*.java bench/*.java
+ *     java -cp bin SolverBenchmark [-quick] [name filter ...]
+ *
+ * @author legge
+ *
+ */
+public class SolverBenchmark {
+
+	private static final String examples = "puzzles/examples.puzzle";
+	private static final int maxCandidates = 10000;
+	// Operations timed together by the fast benchmarks
+	private static final int batchSize = 100;
+
+	private int warmupIterations = 3;
+	private int measureIterations = 5;
+	private long iterationNanos = 1000000000L;
+
+	private final PrintStream out;
+	private final com.sun.management.ThreadMXBean threads;
+
+	// Keeps results alive so the operations can't be optimized away
+	private static volatile Object sink;
+
+	/**
+	 * One benchmark: an untimed set up run before each batch of
+	 * operations and the timed operation itself, given its index in
+	 * the batch
+	 */
+	private static class Benchmark {
+		final String name;
+		final int batch;
+		final Runnable setup;
+		final IntFunction<Object> op;
+
+		Benchmark(String name, Runnable setup, Supplier<Object> op) {
+			this(name, 1, setup, i -> op.get());
+		}
+
+		Benchmark(String name, int batch, Runnable setup, IntFunction<Object> op) {
+			this.name = name;
+			this.batch = batch;
+			this.setup = setup;
+			this.op = op;
+		}
+	}
+
+	public SolverBenchmark(PrintStream out) {
+		this.out = out;
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * Run fewer and shorter iterations
+	 */
+	public void setQuick() {
+		warmupIterations = 1;
+		measureIterations = 3;
+		iterationNanos = 200000000L;
+	}
+
+	/**
+	 * Run a benchmark and print its line of results
+	 * @param b benchmark to run
+	 */
+	private void run(Benchmark b) {
+		long tid = Thread.currentThread().getId();
+		for (int i = 0; i < warmupIterations; i++) {
+			iteration(b, tid, null);
+		}
+		long gcCount = gcCount();
+		long gcTime = gcTime();
+		double[] perOp = new double[measureIterations];
+		long ops = 0;
+		long bytes = 0;
+		for (int i = 0; i < measureIterations; i++) {
+			long[] result = new long[3];
+			iteration(b, tid, result);
+			perOp[i] = (double) result[1] / result[0];
+			ops += result[0];
+			bytes += result[2];
+		}
+		gcCount = gcCount() - gcCount;
+		gcTime = gcTime() - gcTime;
+
+		double mean = 0;
+		for (double p : perOp) {
+			mean += p;
+		}
+		mean /= perOp.length;
+		double var = 0;
+		for (double p : perOp) {
+			var += (p - mean) * (p - mean);
+		}
+		double err = (perOp.length > 1) ? Math.sqrt(var / (perOp.length - 1)) : 0;
+		out.println(String.format("%-36s %10d %14.3f %12.3f %14d %6d %8d",
+				b.name, ops, mean / 1000, err / 1000, bytes / ops, gcCount, gcTime));
+	}
+
+	/**
+	 * Run batches of operations until the iteration time is used, at least once.
+	 * @param result if not null receives ops, timed nanos and allocated bytes
+	 */
+	private void iteration(Benchmark b, long tid, long[] result) {
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		while ((ops == 0) || (nanos < iterationNanos)) {
+			b.setup.run();
+			long a0 = threads.getThreadAllocatedBytes(tid);
+			long t0 = System.nanoTime();
+			for (int i = 0; i < b.batch; i++) {
+				sink = b.op.apply(i);
+			}
+			long t1 = System.nanoTime();
+			long a1 = threads.getThreadAllocatedBytes(tid);
+			nanos += t1 - t0;
+			bytes += a1 - a0;
+			ops += b.batch;
+		}
+		if (result != null) {
+			result[0] = ops;
+			result[1] = nanos;
+			result[2] = bytes;
+		}
+	}
+
+	private static long gcCount() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			n += Math.max(0, gc.getCollectionCount());
+		}
+		return n;
+	}
+	private static long gcTime() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			n += Math.max(0, gc.getCollectionTime());
+		}
+		return n;
+	}
+
+	/**
+	 * @return the example puzzles and some larger generated puzzles by name
+	 */
+	private static Map<String, PuzzleSpec> puzzles() throws IOException {
+		Map<String, PuzzleSpec> specs = new LinkedHashMap<String, PuzzleSpec>();
+		try (PuzzleReader reader = new PuzzleReader(new FileReader(examples), examples)) {
+			while (reader.hasNext()) {
+				PuzzleSpec p = reader.next();
+				specs.put(p.getName(), p);
+			}
+		}
+		int[][] sizes = { {12, 12}, {20, 20}, {40, 40} };
+		for (int[] size : sizes) {
+			PuzzleGenerator gen = new PuzzleGenerator(size[0]);
+			String name = String.format("Gen%dx%d", size[0], size[1]);
+			PuzzleSpec p = gen.generate(name, size[0], size[1]);
+			if (p != null) {
+				specs.put(name, p);
+			}
+		}
+		return specs;
+	}
+
+	/**
+	 * @param grid finalized grid
+	 * @return a freshly initialized solver state for the puzzle
+	 */
+	private static SolverState newState(GridDefinition grid) {
+		SolverState state = new SolverState(grid);
+		state.init();
+		return state;
+	}
+
+	/**
+	 * @return the first bridge which could still be unused or used
+	 */
+	private static Bridge openBridge(SolverState state) {
+		for (Bridge b : state.getGrid().getAllBridges()) {
+			TrackerBridge tb = state.tracker(b);
+			if (tb.zeroScoreAvailable() && tb.nonZeroScoreAvailable()) {
+				return b;
+			}
+		}
+		return null;
+	}
+
+	private static ArrayList<Benchmark> benchmarks(Map<String, PuzzleSpec> specs) {
+		ArrayList<Benchmark> list = new ArrayList<Benchmark>();
+		for (PuzzleSpec spec : specs.values()) {
+			String p = spec.getName();
+
+			// Grid set up from constructed islands
+			GridDefinition[] building = new GridDefinition[1];
+			list.add(new Benchmark("finalizeGrid/" + p,
+					() -> building[0] = spec.buildGrid(),
+					() -> { building[0].finalizeGrid(); return building[0]; }));
+
+			GridDefinition grid = spec.makeGrid();
+			Action action = new Action();
+
+			// One bridge change and the propagation it causes, each
+			// change of a batch made in a state of its own
+			SolverState[] updates = new SolverState[batchSize];
+			int[] updateMarks = new int[batchSize];
+			for (int i = 0; i < batchSize; i++) {
+				updates[i] = newState(grid);
+				updateMarks[i] = action.saveAllStates(updates[i]);
+			}
+			Bridge b = openBridge(updates[0]);
+			if (b != null) {
+				list.add(new Benchmark("update/" + p, batchSize,
+						() -> {
+							for (int i = 0; i < batchSize; i++) {
+								action.revertState(updates[i], updateMarks[i]);
+							}
+						},
+						i -> action.changeMinimum(updates[i].tracker(b), 1)));
+			}
+
+			// Checkpoints and reverting the changes since one
+			SolverState trail = newState(grid);
+			list.add(new Benchmark("saveAllStates/" + p, batchSize,
+					() -> {
+						if (trail.getTrail().getCheckpoint() > 10000) {
+							trail.init();
+						}
+					},
+					i -> { action.saveAllStates(trail); return trail; }));
+			if (b != null) {
+				SolverState[] reverts = new SolverState[batchSize];
+				int[] marks = new int[batchSize];
+				for (int i = 0; i < batchSize; i++) {
+					reverts[i] = newState(grid);
+				}
+				list.add(new Benchmark("revertState/" + p, batchSize,
+						() -> {
+							for (int i = 0; i < batchSize; i++) {
+								reverts[i].init();
+								marks[i] = action.saveAllStates(reverts[i]);
+								action.changeMinimum(reverts[i].tracker(b), 1);
+							}
+						},
+						i -> action.revertState(reverts[i], marks[i])));
+			}
+
+			// Generate every candidate of the constraint with the most,
+			// among those small enough for the solver to branch on
+			SolverState cands = newState(grid);
+			Solver candSolver = new Solver(cands);
+			Constraint widest = null;
+			long most = -1;
+			for (Constraint c : grid.getAllConstraints()) {
+				long n = candSolver.candidatesFor(c).countUpTo(maxCandidates + 1);
+				if (c.hasTarget() && (n > most) && (n <= maxCandidates)) {
+					widest = c;
+					most = n;
+				}
+			}
+			if (widest != null) {
+				Constraint c = widest;
+				list.add(new Benchmark("candidates/" + p,
+						() -> {},
+						() -> {
+							Solver.ConstraintBridgeSolutions cs = candSolver.candidatesFor(c);
+							int n = 0;
+							while (cs.nextAssignment()) {
+								if (cs.checkSolution()) {
+									n++;
+								}
+							}
+							return n;
+						}));
+			}
+
+			// End to end solve, by searching and by SAT
+			list.add(new Benchmark("solve/" + p,
+					() -> {},
+					() -> new Solver(grid).solve()));
+			list.add(new Benchmark("solveSat/" + p,
+					() -> {},
+					() -> {
+						Solver s = new Solver(grid);
+						s.setSatBackend(true);
+						return s.solve();
+					}));
+		}
+		return list;
+	}
+
+	public static void main(String[] args) throws IOException {
+		PrintStream results = System.out;
+		SolverBenchmark bench = new SolverBenchmark(results);
+		ArrayList<String> filters = new ArrayList<String>();
+		for (String a : args) {
+			if (a.equals("-quick")) {
+				bench.setQuick();
+			}
+			else {
+				filters.add(a);
+			}
+		}
+
+		results.println(String.format("%-36s %10s %14s %12s %14s %6s %8s",
+				"Benchmark", "Ops", "us/op", "Error", "B/op", "GCs", "GC ms"));
+		for (Benchmark b : benchmarks(puzzles())) {
+			boolean selected = filters.isEmpty();
+			for (String f : filters) {
+				selected = selected || b.name.contains(f);
+			}
+			if (selected) {
+				bench.run(b);
+			}
+		}
+	}
+}
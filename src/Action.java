@@ -15,14 +15,24 @@ public class Action {
 	boolean updated;
 	boolean printErr;
 	
-	Helper thisLog;
+	private static final Helper actionLog = Helper.forUnit("Actions");
 
 	int historyState;
 	
+	// Records propagations, checkpoints and reverts, may be null
+	private SolverEvents events;
+	
 	public Action() {
 		updated = false;
-		thisLog = new Helper("Actions");
 		historyState = 0;
+		events = null;
+	}
+	
+	/**
+	 * @param e recorder of the actions taken, null for none
+	 */
+	public void setEvents(SolverEvents e) {
+		events = e;
 	}
 	/**
 	 * 
@@ -40,6 +50,9 @@ public class Action {
 	// Each one returns 
 	//   true if a change to any object is made
 	//   false if no action is taken
+	// Solved trackers can't be changed, and bounds are only ever narrowed:
+	// a new minimum below the current one or a maximum above it leaves
+	// the bound as it is.
 
 	/**
 	 * Fix the score of a tracker to a final value.
@@ -48,12 +61,10 @@ public class Action {
 	 * @return true if tracker score is changed, false otherwise.
 	 */
 	public boolean fixAllocation(Tracker t, int newTotal) {
-		
-		Tracker validator = new Tracker();
-		validator.copyBase(t);
-		validator.freezeFinalScore(newTotal);
-	
-		if (!t.validateTracker(t, validator, "fixAllocation" + t.Entity())) {
+		if (t.isSolved()
+				|| (newTotal > t.getMaxPossibleScore())
+				|| (newTotal < t.getMinPossibleScore())
+				|| (newTotal < t.getKnownScore())) {
 			return false;
 		}
 		t.freezeFinalScore(newTotal);
@@ -71,13 +82,12 @@ public class Action {
 		if (change == 0) {
 			return false;
 		}
-		Tracker validator = new Tracker();
-		validator.copyBase(t);
-		validator.setMinPossibleScore(newMin);
-		if (!t.validateTracker(t, validator,	"changeMinimum" + t.Entity())) {
+		if (t.isSolved()) {
 			return false;
 		}
-		t.copyBase(validator);
+		if (change > 0) {
+			t.assignMin(newMin);
+		}
 		updateTracker(t);
 		return updated;
 	}
@@ -92,13 +102,12 @@ public class Action {
 		if (change == 0) {
 			return false;
 		}
-		Tracker validator = new Tracker();
-		validator.copyBase(t);
-		validator.setMaxPossibleScore(newMax);
-		if (!t.validateTracker(t, validator, "changeMaximum" + t.Entity())) {
+		if (t.isSolved()) {
 			return false;
 		}
-		t.copyBase(validator);
+		if (change < 0) {
+			t.assignMax(newMax);
+		}
 		updateTracker(t);
 		return updated;
 	}
@@ -149,80 +158,67 @@ public class Action {
 	*/
 	
 	private boolean updateTracker(Tracker t) {
-		t.update();
+		t.scheduleUpdate();
+		if (t.state != null) {
+			Propagator p = t.state.getPropagator();
+			long before = p.getNumUpdates();
+			p.propagate();
+			if (events != null) {
+				events.record(SolverEvents.PROPAGATION, (int) (p.getNumUpdates() - before), historyState);
+			}
+		}
 		updated = true;
 		return true;
 	}
 	
 	/**
-	 * Save the current state of all trackers - the save is performed within
-	 * each tracker. This just iterates over all trackers so we save a consistent
-	 * state under the same checkpoint.
+	 * Save the current state of all trackers. Trackers record their own
+	 * changes on the trail, so this just marks the current end of the trail
+	 * as a consistent state under a new checkpoint.
 	 * 
-	 * @param gd - the grid definition of the puzzle
+	 * @param state - the solver state of the puzzle
 	 * @return id for the new checkpoint
 	 */
-	public int saveAllStates(GridDefinition gd) {
-		historyState += 1;
-		for (IslandBase ib : gd.getAllSolidIslands()) {
-			ib.tracker.addHistory(historyState);	
-		}
-		for (Bridge b : gd.getAllBridges()) {
-			b.tracker.addHistory(historyState);	
-		}
-		for (Constraint c : gd.getAllConstraints()) {
-			c.tracker.addHistory(historyState);
+	public int saveAllStates(SolverState state) {
+		historyState = state.getTrail().checkpoint();
+		if (events != null) {
+			events.record(SolverEvents.CHECKPOINT, historyState, 0);
 		}
 		return historyState;
 	}
 	
 	/**
-	 * Revert the grid definition to the given checkpoint id
+	 * Revert the solver state to the given checkpoint id
 	 * This will discard any checkpoints after the id.
 	 * 
-	 * @param gd - the grid definition of the puzzle
-	 * @param status - the current status of the solution
+	 * @param state - the solver state of the puzzle
 	 * @param checkpoint - the checkpoint id to revert to
 	 * @return
 	 */
-	public boolean revertState(GridDefinition gd, SolverStatus status, int checkpoint) {
+	public boolean revertState(SolverState state, int checkpoint) {
 		historyState = checkpoint;
-		for (IslandBase ib : gd.getAllIslands()) {
-			ib.tracker.revertHistory(historyState);	
-		}
-		for (Bridge b : gd.getAllBridges()) {
-			b.tracker.revertHistory(historyState);	
+		int size = state.getTrail().size();
+		state.getTrail().revertTo(checkpoint);
+		if (events != null) {
+			events.record(SolverEvents.REVERT, checkpoint, size - state.getTrail().size());
 		}
-		for (Constraint c : gd.getAllConstraints()) {
-			c.tracker.revertHistory(historyState);
-		}
-		status.resetCounts(gd);
-		status.setValid(true);
+		state.getStatus().setValid(true);
+		state.getPropagator().resetFailed();
 		return true;
 	}
 	
 	/**
-	 * Reset the grid definition to a given checkpoint state of a 
+	 * Reset the solver state to a given checkpoint state of a 
 	 * successful solution. 
 	 * This keeps all checkpoints intact.
 	 * 
-	 * @param gd the grid definition of the puzzle
+	 * @param state the solver state of the puzzle
 	 * @param checkpoint - the checkpoint id to replay to
 	 * @return true if checkpoint id successfully replayed, false otherwise
 	 */
-	public boolean replayState(GridDefinition gd, int checkpoint) {
+	public boolean replayState(SolverState state, int checkpoint) {
 		historyState = checkpoint;
-		boolean found = false;
-		for (IslandBase ib : gd.getAllIslands()) {
-			found = ib.tracker.revertHistoryButKeep(historyState) || found;	
-		}
-		for (Bridge b : gd.getAllBridges()) {
-			found = b.tracker.revertHistoryButKeep(historyState) || found;	
-		}
-		for (Constraint c : gd.getAllConstraints()) {
-			found = c.tracker.revertHistoryButKeep(historyState) || found;
-		}
-		return found;
+		return state.getTrail().replayTo(checkpoint);
 	}
 
 }
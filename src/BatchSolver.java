@@ -0,0 +1,447 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Headless entry point that solves a batch of puzzles on a pool of workers.
+ *
+ * Each puzzle is solved by its own Solver on one worker thread, so the
+ * pool keeps every core busy however many puzzles there are. Puzzles are
+ * read as they are submitted and only a bounded number wait for a worker
+ * at any time, so the input can be much larger than memory allows.
+ *
+ * One line is written per puzzle as it finishes, tab separated:
+ *     name  status  time(ms)  solution
+ * where status is solved, unsolved or error, and the solution is the
+ * score of every bridge, one digit each, in the grid's bridge order.
+ *
+ * Each puzzle is given at most -timeout milliseconds (a minute unless set,
+ * 0 for no limit) and -nodes search nodes (no limit unless set). A puzzle
+ * that runs out has the status timeout or node limit instead of unsolved.
+ *
+ * With -count n the solutions of each puzzle are counted, stopping at n
+ * (2 is enough to check a puzzle has a unique solution). The status is
+ * then unique, multiple, solved (one found, but the search was cut short)
+ * or unsolved, and the distinct solutions found are separated by commas.
+ *
+ * With -backend sat each puzzle is solved by a SAT solver (see SatBackend)
+ * rather than by the solver's own search, for comparing the two. With
+ * -backend portfolio several differently configured solvers race on each
+ * puzzle (see Portfolio), which cuts the worst case solve times; counting
+ * with -count still uses a single search.
+ *
+ * With -branch the search branches by another heuristic than the default
+ * fewest (see BranchHeuristic.forName), and with -learning off it neither
+ * learns nogoods nor backjumps from conflicts, for tuning.
+ *
+ * With -events n the searches record their events (see SolverEvents) and
+ * the last n recorded across all puzzles are written to standard error
+ * at the end. With -metrics file the work of all the searches is counted
+ * (see SolverMetrics) and written to the file as JSON at the end, - for
+ * standard error.
+ *
+ * Usage: BatchSolver [-threads n] [-timeout ms] [-nodes n] [-count n]
+ *                    [-backend search|sat|portfolio] [-branch name]
+ *                    [-learning on|off] [-events n] [-metrics file] [source ...]
+ * Each source is a puzzle file (see PuzzleReader), a directory whose
+ * .puzzle files are all read, - for standard input, or the name of a
+ * built-in puzzle. With no sources the puzzles are read from standard
+ * input.
+ *
+ * @author legge
+ *
+ */
+public class BatchSolver {
+
+	private final ExecutorService pool;
+	private final Semaphore waiting;
+	private final PrintStream out;
+
+	private final AtomicInteger numPuzzles;
+	private final AtomicInteger numSolved;
+	// Solutions to count up to, 0 to stop at the first
+	private int countLimit;
+	// Limits for each puzzle, 0 for none
+	private long timeLimit;
+	private long nodeLimit;
+	private boolean sat;
+	private boolean portfolio;
+	private String branching;
+	private boolean learning;
+	private SolverEvents events;
+	private SolverMetrics metrics;
+
+	/**
+	 * @param threads number of worker threads
+	 * @param out stream the result lines are written to
+	 */
+	public BatchSolver(int threads, PrintStream out) {
+		this.out = out;
+		pool = Executors.newFixedThreadPool(threads);
+		// Enough queued puzzles that a worker never waits for the reader
+		waiting = new Semaphore(threads * 2);
+		numPuzzles = new AtomicInteger();
+		numSolved = new AtomicInteger();
+		countLimit = 0;
+		timeLimit = 60000;
+		nodeLimit = 0;
+		sat = false;
+		portfolio = false;
+		branching = "fewest";
+		learning = true;
+		events = null;
+		metrics = null;
+	}
+	
+	/**
+	 * Count the solutions of each puzzle instead of stopping at the first
+	 * @param limit number of solutions at which to stop counting, 0 to solve only
+	 */
+	public void setCountLimit(int limit) {
+		countLimit = Math.max(0, limit);
+	}
+	/**
+	 * @param millis time each puzzle may take, 0 for no limit
+	 */
+	public void setTimeLimit(long millis) {
+		timeLimit = Math.max(0, millis);
+	}
+	/**
+	 * @param n search nodes each puzzle may visit, 0 for no limit
+	 */
+	public void setNodeLimit(long n) {
+		nodeLimit = Math.max(0, n);
+	}
+
+	/**
+	 * @param on true to solve with a SAT solver instead of searching
+	 */
+	public void setSatBackend(boolean on) {
+		sat = on;
+	}
+	/**
+	 * @param on true to race a portfolio of solvers on each puzzle when solving
+	 */
+	public void setPortfolio(boolean on) {
+		portfolio = on;
+	}
+
+	/**
+	 * @param name branching heuristic for each solve, see BranchHeuristic.forName
+	 */
+	public void setBranching(String name) {
+		BranchHeuristic.forName(name);
+		branching = name;
+	}
+
+	/**
+	 * @param on true to learn nogoods and backjump from conflicts, see Solver.setLearning
+	 */
+	public void setLearning(boolean on) {
+		learning = on;
+	}
+
+	/**
+	 * @param e recorder shared by the searches of all puzzles, null for none
+	 */
+	public void setEvents(SolverEvents e) {
+		events = e;
+	}
+	/**
+	 * @param m metrics shared by the searches of all puzzles, null for none
+	 */
+	public void setMetrics(SolverMetrics m) {
+		metrics = m;
+	}
+
+	/**
+	 * Queue a puzzle to be solved, blocking while too many are waiting.
+	 * The grid is built on the worker thread.
+	 * @param name name written on the result line
+	 * @param source supplies the grid definition, or null if there is none
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void submit(String name, Supplier<GridDefinition> source) throws InterruptedException {
+		waiting.acquire();
+		numPuzzles.incrementAndGet();
+		try {
+			pool.execute(() -> {
+				try {
+					solve(name, source);
+				}
+				finally {
+					waiting.release();
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			waiting.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait for all submitted puzzles to finish and stop the workers
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void finish() throws InterruptedException {
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Queue every puzzle read from a puzzle file
+	 * @param reader puzzles to solve
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void submitAll(PuzzleReader reader) throws InterruptedException {
+		while (reader.hasNext()) {
+			PuzzleSpec spec = reader.next();
+			submit(spec.getName(), spec::makeGrid);
+		}
+	}
+
+	/**
+	 * Queue the puzzles of a file, directory or built-in puzzle name
+	 * @param source where to find the puzzles
+	 * @throws IOException if a file can't be read
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void submitSource(String source) throws IOException, InterruptedException {
+		File f = new File(source);
+		if (source.equals("-")) {
+			submitAll(new PuzzleReader(new InputStreamReader(System.in), "stdin"));
+		}
+		else if (f.isDirectory()) {
+			File[] files = f.listFiles((dir, n) -> n.endsWith(".puzzle"));
+			Arrays.sort(files);
+			for (File file : files) {
+				submitSource(file.getPath());
+			}
+		}
+		else if (f.isFile()) {
+			try (PuzzleReader reader = new PuzzleReader(new FileReader(f), f.getName())) {
+				submitAll(reader);
+			}
+		}
+		else {
+			PuzzleDefinition pd = new PuzzleDefinition();
+			submit(source, () -> pd.getPuzzleGrid(source));
+		}
+	}
+
+	/** @return number of puzzles submitted */
+	public int getNumPuzzles() {
+		return numPuzzles.get();
+	}
+	/** @return number of puzzles solved so far */
+	public int getNumSolved() {
+		return numSolved.get();
+	}
+
+	private void solve(String name, Supplier<GridDefinition> source) {
+		long start = System.nanoTime();
+		String status;
+		String solution = "";
+		try {
+			GridDefinition grid = source.get();
+			if (grid == null) {
+				status = "error";
+				solution = "unknown puzzle";
+			}
+			else if (countLimit > 0) {
+				Solver solver = new Solver(grid);
+				solver.setSatBackend(sat);
+				solver.setBranchHeuristic(BranchHeuristic.forName(branching));
+				solver.setLearning(learning);
+				solver.setBudget(budget());
+				solver.setEvents(events);
+				solver.setMetrics(metrics);
+				SolutionCounter sc = solver.countSolutions(countLimit);
+				if (sc.getCount() == 0) {
+					status = solver.getResult().getLabel();
+				}
+				else {
+					status = sc.isUnique() ? "unique" : (sc.getCount() > 1) ? "multiple" : "solved";
+					solution = String.join(",", sc.getSolutions());
+					numSolved.incrementAndGet();
+				}
+			}
+			else if (portfolio) {
+				Portfolio p = Portfolio.standard(grid);
+				SolveResult result = p.solve(budget());
+				status = result.getLabel();
+				if (result == SolveResult.SOLVED) {
+					solution = p.getWinner().getState().solutionString();
+					numSolved.incrementAndGet();
+				}
+			}
+			else {
+				Solver solver = new Solver(grid);
+				solver.setSatBackend(sat);
+				solver.setBranchHeuristic(BranchHeuristic.forName(branching));
+				solver.setLearning(learning);
+				solver.setEvents(events);
+				solver.setMetrics(metrics);
+				SolveResult result = solver.solve(budget());
+				status = result.getLabel();
+				if (result == SolveResult.SOLVED) {
+					solution = solver.getState().solutionString();
+					numSolved.incrementAndGet();
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			status = "error";
+			solution = e.getMessage();
+		}
+		catch (RuntimeException e) {
+			status = "error";
+			solution = e.toString();
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		String line = String.join("\t", name, status, Long.toString(millis), solution);
+		synchronized (out) {
+			out.println(line);
+			out.flush();
+		}
+	}
+
+	private SolveBudget budget() {
+		SolveBudget b = new SolveBudget();
+		b.setTimeLimit(timeLimit);
+		b.setNodeLimit(nodeLimit);
+		return b;
+	}
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("Usage: BatchSolver [-threads n] [-timeout ms] [-nodes n] [-count n]");
+		System.err.println("                   [-backend search|sat|portfolio] [-branch name]");
+		System.err.println("                   [-learning on|off] [-events n] [-metrics file] [source ...]");
+		System.exit(2);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int count = 0;
+		long timeout = 60000;
+		long nodes = 0;
+		boolean sat = false;
+		boolean portfolio = false;
+		String branching = "fewest";
+		boolean learning = true;
+		int numEvents = 0;
+		String metricsFile = null;
+		int first = 0;
+		while ((args.length > first) && args[first].startsWith("-") && !args[first].equals("-")) {
+			String option = args[first];
+			if (args.length == first + 1) {
+				usage("Missing value for " + option);
+				return;
+			}
+			String value = args[first + 1];
+			try {
+				if (option.equals("-threads")) {
+					threads = Integer.parseInt(value);
+					if (threads < 1) {
+						throw new IllegalArgumentException("must be at least 1");
+					}
+				}
+				else if (option.equals("-count")) {
+					count = Integer.parseInt(value);
+				}
+				else if (option.equals("-timeout")) {
+					timeout = Long.parseLong(value);
+				}
+				else if (option.equals("-nodes")) {
+					nodes = Long.parseLong(value);
+				}
+				else if (option.equals("-backend")) {
+					if (!value.equals("search") && !value.equals("sat") && !value.equals("portfolio")) {
+						throw new IllegalArgumentException("Unknown backend " + value);
+					}
+					sat = value.equals("sat");
+					portfolio = value.equals("portfolio");
+				}
+				else if (option.equals("-branch")) {
+					BranchHeuristic.forName(value);
+					branching = value;
+				}
+				else if (option.equals("-learning")) {
+					if (!value.equals("on") && !value.equals("off")) {
+						throw new IllegalArgumentException("must be on or off");
+					}
+					learning = value.equals("on");
+				}
+				else if (option.equals("-events")) {
+					numEvents = Integer.parseInt(value);
+				}
+				else if (option.equals("-metrics")) {
+					metricsFile = value;
+				}
+				else {
+					usage("Unknown option " + option);
+					return;
+				}
+			}
+			catch (IllegalArgumentException e) {
+				usage("Bad value for " + option + ": " + e.getMessage());
+				return;
+			}
+			first += 2;
+		}
+
+		long start = System.nanoTime();
+		BatchSolver batch = new BatchSolver(threads, System.out);
+		batch.setCountLimit(count);
+		batch.setTimeLimit(timeout);
+		batch.setNodeLimit(nodes);
+		batch.setSatBackend(sat);
+		batch.setPortfolio(portfolio);
+		batch.setBranching(branching);
+		batch.setLearning(learning);
+		SolverEvents events = (numEvents > 0) ? new SolverEvents(numEvents) : null;
+		batch.setEvents(events);
+		SolverMetrics metrics = (metricsFile != null) ? new SolverMetrics() : null;
+		batch.setMetrics(metrics);
+		try {
+			if (args.length > first) {
+				for (int i = first; i < args.length; i++) {
+					batch.submitSource(args[i]);
+				}
+			}
+			else {
+				batch.submitSource("-");
+			}
+		}
+		finally {
+			batch.finish();
+		}
+		if (events != null) {
+			events.write(System.err);
+		}
+		if (metrics != null) {
+			if (metricsFile.equals("-")) {
+				System.err.println(metrics.toJson());
+			}
+			else {
+				try (PrintStream m = new PrintStream(metricsFile)) {
+					m.println(metrics.toJson());
+				}
+			}
+		}
+		System.err.println(String.format("Solved %d of %d puzzles in %d ms",
+				batch.getNumSolved(), batch.getNumPuzzles(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+	}
+}
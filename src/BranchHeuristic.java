@@ -0,0 +1,77 @@
+/**
+ * Chooses the constraint the solver branches on next.
+ *
+ * At each search node the solver asks the heuristic for an unsolved
+ * constraint with a target, and then tries each candidate solution of
+ * that constraint in turn. The heuristic is told how each candidate went,
+ * so it can learn which constraints are worth branching on early.
+ *
+ * Ties between equally good constraints are broken with Solver.preferTie,
+ * so that a solver with a random seed varies its choice between them.
+ *
+ * One heuristic is used for a whole solve, by every branch of a parallel
+ * search, so what it learns must be safe to update from several threads.
+ *
+ * @author legge
+ *
+ */
+public interface BranchHeuristic {
+
+	/**
+	 * Forget anything learned, at the start of a solve
+	 * @param grid the grid being solved
+	 */
+	void start(GridDefinition grid);
+
+	/**
+	 * @param solver the solver asking, for candidate counts
+	 * @param state the state at the search node
+	 * @return the constraint to branch on, null if every constraint
+	 *         with a target is solved
+	 */
+	Constraint select(Solver solver, SolverState state);
+
+	/**
+	 * Measure a search node before its candidates are tried
+	 * @param state the state at the search node
+	 * @return a measure passed back to tried, 0 if not needed
+	 */
+	double measure(SolverState state);
+
+	/**
+	 * A candidate of the constraint branched on has been applied
+	 * @param c the constraint
+	 * @param state the state with the candidate applied
+	 * @param before the measure of the node before the candidate
+	 * @param failed true if propagating the candidate failed
+	 */
+	void tried(Constraint c, SolverState state, double before, boolean failed);
+
+	/**
+	 * @param c constraint
+	 * @param state solver state
+	 * @return true if the constraint has a target and isn't solved yet
+	 */
+	static boolean isOpen(Constraint c, SolverState state) {
+		return c.hasTarget() && !state.tracker(c).isSolved();
+	}
+
+	/**
+	 * @param name fewest, domwdeg, island or impact
+	 * @return a new heuristic of that name
+	 */
+	static BranchHeuristic forName(String name) {
+		switch (name) {
+		case "fewest":
+			return new FewestCandidatesHeuristic();
+		case "domwdeg":
+			return new DomWdegHeuristic();
+		case "island":
+			return new ConstrainedIslandHeuristic();
+		case "impact":
+			return new ImpactHeuristic();
+		default:
+			throw new IllegalArgumentException("Unknown branching heuristic " + name);
+		}
+	}
+}
@@ -9,7 +9,7 @@ import java.util.TreeSet;
  * bridge spans.
  * 
  * The class members are mostly read-only once defined, with bridge scores and logic for 
- * a solution contained only in a tracker field.
+ * a solution contained only in the tracker for the bridge held by a SolverState.
  * 
  * @author legge
  *
@@ -19,10 +19,10 @@ public class Bridge {
 	IslandBase fromIsland;
 	IslandBase toIsland;
 	ArrayList<IslandBase> iNulls;
+	Bridge[] crossings; // bridges through the same null islands, set when the grid is finalized
 	ArrayList<Constraint> constraints;
 	private Constraint insideConstraint;
-	
-	TrackerBridge tracker;
+	int index; // position in the grid's list of all bridges
 	
 	/**
 	 * Constructor creates basic structure that needs filling in
@@ -30,8 +30,6 @@ public class Bridge {
 	 * @param b - island where bridge ends
 	 */
 	public Bridge(IslandBase a, IslandBase b) {
-		tracker = new TrackerBridge();
-		
 		// ensure ordering is consistent
 		if (IslandBase.compare(a,b) > 0) {
 			fromIsland = b;
@@ -43,9 +41,18 @@ public class Bridge {
 		}
 	
 		iNulls = new ArrayList<IslandBase>();
+		crossings = new Bridge[0];
 		constraints = new ArrayList<Constraint>();
 	}
 	
+	/**
+	 * 
+	 * @return index of this bridge in the grid's list of all bridges
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
 	/**
 	 * Record which null islands the bridge passes through
 	 * @param ib A null island on the bridge
@@ -53,6 +60,14 @@ public class Bridge {
 	public void addNull(IslandBase ib) {
 		iNulls.add(ib);
 	}
+	/**
+	 * 
+	 * @return the bridges passing through a null island of this bridge,
+	 *         which can't be used together with it
+	 */
+	public Bridge[] getCrossings() {
+		return crossings;
+	}
 	/**
 	 * Record which constraints the bridge belongs to
 	 * @param cs constraint to record
@@ -0,0 +1,39 @@
+/**
+ * Lets another thread ask a running solve to stop.
+ *
+ * The solver checks the token at every search node and every so often
+ * during propagation, so a cancelled solve returns soon after, reporting
+ * SolveResult.CANCELLED.
+ *
+ * @author legge
+ *
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled;
+	private final CancellationToken parent;
+
+	public CancellationToken() {
+		this(null);
+	}
+
+	/**
+	 * @param parent token whose cancellation cancels this one too, may be null
+	 */
+	public CancellationToken(CancellationToken parent) {
+		cancelled = false;
+		this.parent = parent;
+	}
+
+	/**
+	 * Ask the solve using this token to stop
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/** @return true once cancel has been called, on this token or its parent */
+	public boolean isCancelled() {
+		return cancelled || ((parent != null) && parent.isCancelled());
+	}
+}
@@ -0,0 +1,573 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A conflict driven clause learning SAT solver.
+ *
+ * The usual parts of a modern SAT solver, kept small:
+ * - unit propagation over two watched literals per clause
+ * - on a conflict, a first unique implication point clause is learned,
+ *   minimized, and the search backjumps to the level where it is unit
+ * - variables are chosen by activity (VSIDS), bumped for each conflict
+ *   they take part in, with the last value of each variable reused
+ * - restarts follow the Luby sequence
+ * - learned clauses of low activity are dropped when there are too many
+ *
+ * Literals and clauses are given in DIMACS form (see Cnf). Clauses can be
+ * added between solves, so a solve can be repeated with more clauses, as
+ * when cut clauses or clauses excluding a solution are added.
+ *
+ * A budget stops the solve: every decision counts as a search node.
+ *
+ * @author legge
+ *
+ */
+public class CdclSolver {
+
+	private static final int restartUnit = 100;
+	private static final double varDecay = 0.95;
+	private static final double clauseDecay = 0.999;
+	private static final double rescaleLimit = 1e100;
+
+	private static class Clause {
+		final int[] lits;
+		final boolean learnt;
+		double activity;
+		boolean deleted;
+
+		Clause(int[] lits, boolean learnt) {
+			this.lits = lits;
+			this.learnt = learnt;
+		}
+	}
+
+	// Clauses watching a literal, deleted ones are dropped when next seen
+	private static class Watches {
+		Clause[] clauses = new Clause[4];
+		int size;
+
+		void add(Clause c) {
+			if (size == clauses.length) {
+				clauses = Arrays.copyOf(clauses, size * 2);
+			}
+			clauses[size++] = c;
+		}
+	}
+
+	private final int numVars;
+	// Internal literals are 2v for variable v true and 2v+1 for it false.
+	// values is by literal: 1 true, -1 false, 0 unassigned
+	private final byte[] values;
+	private final int[] level;
+	private final Clause[] reason;
+	private final boolean[] phase;
+	private final boolean[] seen;
+	private final Watches[] watches;
+
+	private final int[] trail;
+	private int trailSize;
+	private int qhead;
+	private int[] trailLim;
+	private int numLevels;
+
+	private final ArrayList<Clause> clauses;
+	private final ArrayList<Clause> learnts;
+	private double maxLearnts;
+
+	// Variable order by activity
+	private final double[] activity;
+	private double varInc;
+	private double clauseInc;
+	private final int[] heap;
+	private final int[] heapIndex;
+	private int heapSize;
+
+	// False once the clauses are known to be unsatisfiable
+	private boolean ok;
+	private boolean[] model;
+	private SolveBudget budget;
+
+	private long numConflicts;
+	private long numDecisions;
+	private long numPropagations;
+
+	/**
+	 * @param numVars number of variables, numbered from 1
+	 */
+	public CdclSolver(int numVars) {
+		this.numVars = numVars;
+		int n = numVars + 1;
+		values = new byte[2 * n];
+		level = new int[n];
+		reason = new Clause[n];
+		phase = new boolean[n];
+		seen = new boolean[n];
+		watches = new Watches[2 * n];
+		for (int i = 0; i < watches.length; i++) {
+			watches[i] = new Watches();
+		}
+		trail = new int[n];
+		trailSize = 0;
+		qhead = 0;
+		trailLim = new int[16];
+		numLevels = 0;
+		clauses = new ArrayList<Clause>();
+		learnts = new ArrayList<Clause>();
+		activity = new double[n];
+		varInc = 1;
+		clauseInc = 1;
+		heap = new int[n];
+		heapIndex = new int[n];
+		Arrays.fill(heapIndex, -1);
+		heapSize = 0;
+		for (int v = 1; v <= numVars; v++) {
+			heapInsert(v);
+		}
+		ok = true;
+		model = null;
+		budget = new SolveBudget();
+	}
+
+	/**
+	 * @param b budget whose search nodes are the decisions of later solves
+	 */
+	public void setBudget(SolveBudget b) {
+		budget = b;
+	}
+
+	/**
+	 * Add a clause, between solves
+	 * @param dimacs literals of the clause
+	 * @return false if the clauses are now known to be unsatisfiable
+	 */
+	public boolean addClause(int... dimacs) {
+		if (!ok) {
+			return false;
+		}
+		int[] lits = new int[dimacs.length];
+		int n = 0;
+		for (int d : dimacs) {
+			if ((d == 0) || (Math.abs(d) > numVars)) {
+				throw new IllegalArgumentException("Literal " + d + " is not a variable of the solver");
+			}
+			int l = literal(d);
+			if ((values[l] == 1) || contains(lits, n, l ^ 1)) {
+				// Already satisfied
+				return true;
+			}
+			if ((values[l] == 0) && !contains(lits, n, l)) {
+				lits[n++] = l;
+			}
+		}
+		if (n == 0) {
+			ok = false;
+		}
+		else if (n == 1) {
+			assign(lits[0], null);
+			ok = (propagate() == null);
+		}
+		else {
+			Clause c = new Clause(Arrays.copyOf(lits, n), false);
+			attach(c);
+			clauses.add(c);
+		}
+		return ok;
+	}
+
+	private static boolean contains(int[] lits, int n, int l) {
+		for (int i = 0; i < n; i++) {
+			if (lits[i] == l) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int literal(int dimacs) {
+		return (dimacs > 0) ? 2 * dimacs : 2 * -dimacs + 1;
+	}
+
+	/**
+	 * @param var variable
+	 * @return its value in the model found by the last solve
+	 */
+	public boolean value(int var) {
+		return model[var];
+	}
+
+	/**
+	 * Look for an assignment satisfying all the clauses
+	 * @return SOLVED with a model, UNSOLVABLE if there is none, or the
+	 *         limit of the budget that stopped the solve
+	 */
+	public SolveResult solve() {
+		model = null;
+		if (!ok) {
+			return SolveResult.UNSOLVABLE;
+		}
+		maxLearnts = Math.max(clauses.size() / 3.0, 1000);
+		for (int restarts = 0; ; restarts++) {
+			SolveResult result = search(RestartStrategy.lubyTerm(restarts) * restartUnit);
+			if (result != null) {
+				cancelUntil(0);
+				return result;
+			}
+			maxLearnts *= 1.05;
+		}
+	}
+
+	/**
+	 * Search until a result or a restart
+	 * @param maxConflicts conflicts after which to restart
+	 * @return the result, or null to restart
+	 */
+	private SolveResult search(long maxConflicts) {
+		long conflicts = 0;
+		while (true) {
+			Clause conflict = propagate();
+			if (conflict != null) {
+				numConflicts++;
+				conflicts++;
+				if (numLevels == 0) {
+					ok = false;
+					return SolveResult.UNSOLVABLE;
+				}
+				int[] learnt = analyze(conflict);
+				cancelUntil((learnt.length == 1) ? 0 : level[learnt[1] >> 1]);
+				if (learnt.length == 1) {
+					assign(learnt[0], null);
+				}
+				else {
+					Clause c = new Clause(learnt, true);
+					attach(c);
+					learnts.add(c);
+					bumpClause(c);
+					assign(learnt[0], c);
+				}
+				varInc /= varDecay;
+				clauseInc /= clauseDecay;
+				continue;
+			}
+			if (conflicts >= maxConflicts) {
+				cancelUntil(0);
+				return null;
+			}
+			if (learnts.size() - trailSize >= maxLearnts) {
+				reduceLearnts();
+			}
+			int next = pickBranchLiteral();
+			if (next < 0) {
+				model = new boolean[numVars + 1];
+				for (int v = 1; v <= numVars; v++) {
+					model[v] = (values[2 * v] == 1);
+				}
+				return SolveResult.SOLVED;
+			}
+			if (!budget.countNode()) {
+				return budget.getStopReason();
+			}
+			numDecisions++;
+			if (numLevels == trailLim.length) {
+				trailLim = Arrays.copyOf(trailLim, numLevels * 2);
+			}
+			trailLim[numLevels++] = trailSize;
+			assign(next, null);
+		}
+	}
+
+	private void assign(int lit, Clause from) {
+		int v = lit >> 1;
+		values[lit] = 1;
+		values[lit ^ 1] = -1;
+		level[v] = numLevels;
+		reason[v] = from;
+		trail[trailSize++] = lit;
+	}
+
+	private void attach(Clause c) {
+		watches[c.lits[0]].add(c);
+		watches[c.lits[1]].add(c);
+	}
+
+	/**
+	 * Propagate the assignments not yet propagated
+	 * @return a clause with all its literals false, null if there is none
+	 */
+	private Clause propagate() {
+		while (qhead < trailSize) {
+			int falseLit = trail[qhead++] ^ 1;
+			numPropagations++;
+			Watches ws = watches[falseLit];
+			Clause[] list = ws.clauses;
+			int n = ws.size;
+			int i = 0;
+			int j = 0;
+			while (i < n) {
+				Clause c = list[i++];
+				if (c.deleted) {
+					continue;
+				}
+				int[] lits = c.lits;
+				// Keep the false literal second
+				if (lits[0] == falseLit) {
+					lits[0] = lits[1];
+					lits[1] = falseLit;
+				}
+				if (values[lits[0]] == 1) {
+					list[j++] = c;
+					continue;
+				}
+				boolean moved = false;
+				for (int k = 2; k < lits.length; k++) {
+					if (values[lits[k]] != -1) {
+						lits[1] = lits[k];
+						lits[k] = falseLit;
+						watches[lits[1]].add(c);
+						moved = true;
+						break;
+					}
+				}
+				if (moved) {
+					continue;
+				}
+				list[j++] = c;
+				if (values[lits[0]] == -1) {
+					while (i < n) {
+						list[j++] = list[i++];
+					}
+					Arrays.fill(list, j, n, null);
+					ws.size = j;
+					qhead = trailSize;
+					return c;
+				}
+				assign(lits[0], c);
+			}
+			Arrays.fill(list, j, n, null);
+			ws.size = j;
+		}
+		return null;
+	}
+
+	/**
+	 * Learn a clause from a conflict: resolve the conflict clause with the
+	 * reasons of the literals assigned at the current level until only one
+	 * of them is left
+	 * @return the learned clause, the literal to assert first and the
+	 *         literal of the highest other level second
+	 */
+	private int[] analyze(Clause conflict) {
+		int[] learnt = new int[numVars + 1];
+		int n = 1;
+		int pathCount = 0;
+		int p = -1;
+		int index = trailSize - 1;
+		Clause c = conflict;
+		do {
+			if (c.learnt) {
+				bumpClause(c);
+			}
+			for (int k = (p == -1) ? 0 : 1; k < c.lits.length; k++) {
+				int q = c.lits[k];
+				int v = q >> 1;
+				if (!seen[v] && (level[v] > 0)) {
+					seen[v] = true;
+					bumpVar(v);
+					if (level[v] >= numLevels) {
+						pathCount++;
+					}
+					else {
+						learnt[n++] = q;
+					}
+				}
+			}
+			while (!seen[trail[index] >> 1]) {
+				index--;
+			}
+			p = trail[index--];
+			c = reason[p >> 1];
+			seen[p >> 1] = false;
+			pathCount--;
+		} while (pathCount > 0);
+		learnt[0] = p ^ 1;
+
+		// Drop literals implied by the others through their reasons
+		int[] all = Arrays.copyOf(learnt, n);
+		int m = 1;
+		for (int i = 1; i < n; i++) {
+			if (!redundant(all[i])) {
+				learnt[m++] = all[i];
+			}
+		}
+		for (int i = 1; i < n; i++) {
+			seen[all[i] >> 1] = false;
+		}
+		// The clause is unit after backjumping to the highest other level
+		int max = 1;
+		for (int i = 2; i < m; i++) {
+			if (level[learnt[i] >> 1] > level[learnt[max] >> 1]) {
+				max = i;
+			}
+		}
+		if (m > 1) {
+			int t = learnt[1];
+			learnt[1] = learnt[max];
+			learnt[max] = t;
+		}
+		return Arrays.copyOf(learnt, m);
+	}
+
+	private boolean redundant(int lit) {
+		Clause r = reason[lit >> 1];
+		if (r == null) {
+			return false;
+		}
+		for (int k = 1; k < r.lits.length; k++) {
+			int v = r.lits[k] >> 1;
+			if (!seen[v] && (level[v] > 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void cancelUntil(int lvl) {
+		if (numLevels <= lvl) {
+			return;
+		}
+		for (int i = trailSize - 1; i >= trailLim[lvl]; i--) {
+			int v = trail[i] >> 1;
+			phase[v] = (trail[i] & 1) == 0;
+			values[2 * v] = 0;
+			values[2 * v + 1] = 0;
+			reason[v] = null;
+			if (heapIndex[v] < 0) {
+				heapInsert(v);
+			}
+		}
+		trailSize = trailLim[lvl];
+		qhead = trailSize;
+		numLevels = lvl;
+	}
+
+	private int pickBranchLiteral() {
+		while (heapSize > 0) {
+			int v = heapRemoveMax();
+			if (values[2 * v] == 0) {
+				return phase[v] ? 2 * v : 2 * v + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Drop the less active half of the learned clauses, keeping
+	 * binary clauses and those that are the reason for an assignment
+	 */
+	private void reduceLearnts() {
+		learnts.sort((a, b) -> Double.compare(a.activity, b.activity));
+		double limit = clauseInc / learnts.size();
+		int half = learnts.size() / 2;
+		ArrayList<Clause> kept = new ArrayList<Clause>();
+		for (int i = 0; i < learnts.size(); i++) {
+			Clause c = learnts.get(i);
+			boolean locked = (reason[c.lits[0] >> 1] == c) && (values[c.lits[0]] == 1);
+			if ((c.lits.length > 2) && !locked && ((i < half) || (c.activity < limit))) {
+				c.deleted = true;
+			}
+			else {
+				kept.add(c);
+			}
+		}
+		learnts.clear();
+		learnts.addAll(kept);
+	}
+
+	private void bumpVar(int v) {
+		activity[v] += varInc;
+		if (activity[v] > rescaleLimit) {
+			for (int i = 1; i <= numVars; i++) {
+				activity[i] /= rescaleLimit;
+			}
+			varInc /= rescaleLimit;
+		}
+		if (heapIndex[v] >= 0) {
+			heapUp(heapIndex[v]);
+		}
+	}
+
+	private void bumpClause(Clause c) {
+		c.activity += clauseInc;
+		if (c.activity > rescaleLimit) {
+			for (Clause l : learnts) {
+				l.activity /= rescaleLimit;
+			}
+			clauseInc /= rescaleLimit;
+		}
+	}
+
+	// Binary max heap of the variables by activity
+
+	private void heapInsert(int v) {
+		heap[heapSize] = v;
+		heapIndex[v] = heapSize;
+		heapUp(heapSize++);
+	}
+
+	private int heapRemoveMax() {
+		int v = heap[0];
+		heapIndex[v] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			heapDown(0);
+		}
+		return v;
+	}
+
+	private void heapUp(int i) {
+		int v = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (activity[heap[parent]] >= activity[v]) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heapIndex[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+	private void heapDown(int i) {
+		int v = heap[i];
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+			if ((child + 1 < heapSize) && (activity[heap[child + 1]] > activity[heap[child]])) {
+				child++;
+			}
+			if (activity[heap[child]] <= activity[v]) {
+				break;
+			}
+			heap[i] = heap[child];
+			heapIndex[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+	/** @return number of conflicts over all solves */
+	public long getNumConflicts() {
+		return numConflicts;
+	}
+	/** @return number of decisions over all solves */
+	public long getNumDecisions() {
+		return numDecisions;
+	}
+	/** @return number of assignments propagated over all solves */
+	public long getNumPropagations() {
+		return numPropagations;
+	}
+}
@@ -0,0 +1,83 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A formula in conjunctive normal form: a number of boolean variables and
+ * a list of clauses over them.
+ *
+ * Literals follow the DIMACS convention: variables are numbered from 1,
+ * literal v is variable v being true and -v is it being false. A clause
+ * is satisfied when any of its literals is, and an empty clause can never
+ * be satisfied.
+ *
+ * @author legge
+ *
+ */
+public class Cnf {
+
+	private int numVars;
+	private final ArrayList<int[]> clauses;
+
+	/**
+	 * Create a formula with no variables or clauses
+	 */
+	public Cnf() {
+		numVars = 0;
+		clauses = new ArrayList<int[]>();
+	}
+
+	/** @return a new variable */
+	public int newVar() {
+		return ++numVars;
+	}
+
+	/**
+	 * Add a clause
+	 * @param lits literals of the clause
+	 */
+	public void add(int... lits) {
+		for (int l : lits) {
+			if ((l == 0) || (Math.abs(l) > numVars)) {
+				throw new IllegalArgumentException("Literal " + l + " is not a variable of the formula");
+			}
+		}
+		clauses.add(lits.clone());
+	}
+
+	/** @return number of variables */
+	public int getNumVars() {
+		return numVars;
+	}
+	/** @return number of clauses */
+	public int getNumClauses() {
+		return clauses.size();
+	}
+	/** @return the clauses in the order they were added */
+	public List<int[]> getClauses() {
+		return Collections.unmodifiableList(clauses);
+	}
+
+	/**
+	 * Write the formula in DIMACS format
+	 * @param out stream to write to
+	 * @param comments comment lines written before the header, may be empty
+	 */
+	public void write(PrintStream out, String... comments) {
+		for (String c : comments) {
+			out.println("c " + c);
+		}
+		out.println("p cnf " + numVars + " " + clauses.size());
+		StringBuilder sb = new StringBuilder();
+		for (int[] clause : clauses) {
+			sb.setLength(0);
+			for (int l : clause) {
+				sb.append(l).append(' ');
+			}
+			sb.append('0');
+			out.println(sb);
+		}
+		out.flush();
+	}
+}
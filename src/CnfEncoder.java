@@ -0,0 +1,339 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Encoder of a finalized grid as a CNF formula, for a SAT solver.
+ *
+ * Each bridge score is order encoded: one variable per score k from 1 up
+ * to the bridge's limit, true when the score is at least k. An island's
+ * value is then the number of true score variables of its bridges, and a
+ * totalizer turns that count into order encoded value variables. The
+ * value variables of the islands of a constraint are counted by another
+ * totalizer whose count must equal the target, and any two islands of the
+ * constraint are kept from having the same value (rule 5 in the README).
+ * Bridges through the same null island can't both be used.
+ *
+ * Connectivity isn't in the formula, since it would need far too many
+ * clauses. It is enforced lazily instead: when a model leaves the islands
+ * in more than one component, each component gets a cut clause saying
+ * that one of the bridges leaving it is used, and the solver carries on.
+ *
+ * Usage: CnfEncoder source [name]
+ * writes the formula of a puzzle to standard output in DIMACS format,
+ * the source being a puzzle file (the first puzzle, or the one named) or
+ * the name of a built-in puzzle.
+ *
+ * @author legge
+ *
+ */
+public class CnfEncoder {
+
+	private final GridDefinition grid;
+	private final Cnf cnf;
+	// scoreVars[b][k-1] is true when bridge b has a score of at least k
+	private final int[][] scoreVars;
+	// valueVars[i][k-1] is true when island i has a value of at least k,
+	// null for null islands and constraint boxes
+	private final int[][] valueVars;
+
+	/**
+	 * @param g finalized grid to encode
+	 */
+	public CnfEncoder(GridDefinition g) {
+		grid = g;
+		cnf = new Cnf();
+		scoreVars = new int[grid.getAllBridges().size()][];
+		valueVars = new int[grid.getAllIslands().size()][];
+		encodeBridges();
+		encodeIslands();
+		encodeConstraints();
+	}
+
+	/** @return the formula, without any cut clauses */
+	public Cnf getCnf() {
+		return cnf;
+	}
+
+	/**
+	 * @param b bridge
+	 * @param k score from 1 to the bridge's limit
+	 * @return the variable true when the bridge's score is at least k,
+	 *         0 if the bridge can't have that score
+	 */
+	public int scoreVar(Bridge b, int k) {
+		int[] vars = scoreVars[b.index];
+		return ((k >= 1) && (k <= vars.length)) ? vars[k-1] : 0;
+	}
+
+	// Bridges are limited as their trackers are (see TrackerBridge.init)
+	private void encodeBridges() {
+		for (Bridge b : grid.getAllBridges()) {
+			int limit = TrackerBridge.maxWeight;
+			for (Constraint c : b.constraints) {
+				if (c.hasTarget() && (c.Target() >= 0)) {
+					limit = Math.min(limit, c.Target());
+				}
+			}
+			int[] vars = new int[limit];
+			for (int k = 0; k < limit; k++) {
+				vars[k] = cnf.newVar();
+				if (k > 0) {
+					cnf.add(-vars[k], vars[k-1]);
+				}
+			}
+			scoreVars[b.index] = vars;
+		}
+		for (Bridge b : grid.getAllBridges()) {
+			for (Bridge x : b.crossings) {
+				if ((b.index < x.index) && (scoreVar(b, 1) != 0) && (scoreVar(x, 1) != 0)) {
+					cnf.add(-scoreVar(b, 1), -scoreVar(x, 1));
+				}
+			}
+		}
+	}
+
+	private void encodeIslands() {
+		ArrayList<ArrayList<Integer>> inputs = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < valueVars.length; i++) {
+			inputs.add(new ArrayList<Integer>());
+		}
+		for (Bridge b : grid.getAllBridges()) {
+			for (int v : scoreVars[b.index]) {
+				inputs.get(b.fromIsland.index).add(v);
+				inputs.get(b.toIsland.index).add(v);
+			}
+		}
+		// Every island needs a bridge for the islands to be connected
+		boolean needBridge = grid.getAllSolidIslands().size() > 1;
+		for (IslandBase ib : grid.getAllSolidIslands()) {
+			valueVars[ib.index] = totalizer(toArray(inputs.get(ib.index)), Integer.MAX_VALUE);
+			if (needBridge) {
+				if (valueVars[ib.index].length == 0) {
+					cnf.add();
+				}
+				else {
+					cnf.add(valueVars[ib.index][0]);
+				}
+			}
+		}
+	}
+
+	private void encodeConstraints() {
+		for (Constraint c : grid.getAllConstraints()) {
+			if (!c.hasTarget()) {
+				continue;
+			}
+			int t = c.Target();
+			ArrayList<Integer> inputs = new ArrayList<Integer>();
+			for (IslandBase ib : c.solidIslands) {
+				for (int v : valueVars[ib.index]) {
+					inputs.add(v);
+				}
+			}
+			// Only counts up to one past the target matter
+			int[] sum = totalizer(toArray(inputs), t + 1);
+			if (sum.length < t) {
+				cnf.add();
+				continue;
+			}
+			cnf.add(sum[t-1]);
+			if (sum.length > t) {
+				cnf.add(-sum[t]);
+			}
+			for (int i = 0; i < c.solidIslands.size(); i++) {
+				for (int j = i+1; j < c.solidIslands.size(); j++) {
+					differentValues(valueVars[c.solidIslands.get(i).index],
+							valueVars[c.solidIslands.get(j).index]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * For every value v two islands could share, add a clause that they
+	 * don't both have it: not (a >= v and a < v+1 and b >= v and b < v+1)
+	 */
+	private void differentValues(int[] a, int[] b) {
+		for (int v = 0; v <= Math.min(a.length, b.length); v++) {
+			ArrayList<Integer> clause = new ArrayList<Integer>();
+			if (v > 0) {
+				clause.add(-a[v-1]);
+				clause.add(-b[v-1]);
+			}
+			if (v < a.length) {
+				clause.add(a[v]);
+			}
+			if (v < b.length) {
+				clause.add(b[v]);
+			}
+			cnf.add(toArray(clause));
+		}
+	}
+
+	/**
+	 * Count the true literals of a list with a totalizer: a tree of unary
+	 * adders, each node's outputs being exactly the count of its inputs.
+	 * @param lits variables to count
+	 * @param cap counts above this needn't be told apart
+	 * @return variables, the kth true when at least k+1 of the inputs are,
+	 *         as many as there are inputs, or cap if fewer
+	 */
+	private int[] totalizer(int[] lits, int cap) {
+		if (lits.length <= 1) {
+			return lits;
+		}
+		int half = lits.length / 2;
+		int[] a = totalizer(Arrays.copyOfRange(lits, 0, half), cap);
+		int[] b = totalizer(Arrays.copyOfRange(lits, half, lits.length), cap);
+		int[] r = new int[Math.min(a.length + b.length, cap)];
+		for (int k = 0; k < r.length; k++) {
+			r[k] = cnf.newVar();
+		}
+		// At least i of a and j of b make at least i+j, and fewer than i+1
+		// of a and j+1 of b make fewer than i+j+1
+		for (int i = 0; i <= a.length; i++) {
+			for (int j = 0; j <= b.length; j++) {
+				if ((i + j >= 1) && (i + j <= r.length)) {
+					ArrayList<Integer> up = new ArrayList<Integer>();
+					if (i > 0) {
+						up.add(-a[i-1]);
+					}
+					if (j > 0) {
+						up.add(-b[j-1]);
+					}
+					up.add(r[i+j-1]);
+					cnf.add(toArray(up));
+				}
+				if (i + j < r.length) {
+					ArrayList<Integer> down = new ArrayList<Integer>();
+					if (i < a.length) {
+						down.add(a[i]);
+					}
+					if (j < b.length) {
+						down.add(b[j]);
+					}
+					down.add(-r[i+j]);
+					cnf.add(toArray(down));
+				}
+			}
+		}
+		return r;
+	}
+
+	private static int[] toArray(ArrayList<Integer> list) {
+		int[] a = new int[list.size()];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = list.get(i);
+		}
+		return a;
+	}
+
+	/**
+	 * @param sat a solver holding a model of the formula
+	 * @return the score of every bridge in the model, by bridge index
+	 */
+	public int[] scores(CdclSolver sat) {
+		int[] scores = new int[scoreVars.length];
+		for (int b = 0; b < scoreVars.length; b++) {
+			for (int v : scoreVars[b]) {
+				if (sat.value(v)) {
+					scores[b]++;
+				}
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * Cut clauses for bridge scores that leave the islands unconnected:
+	 * one for each component, saying one of the bridges out of it is used
+	 * @param scores score of every bridge by bridge index
+	 * @return the cut clauses, none if the islands are connected
+	 */
+	public ArrayList<int[]> cuts(int[] scores) {
+		ArrayList<int[]> cuts = new ArrayList<int[]>();
+		Connectivity conn = new Connectivity(grid.getAllIslands().size());
+		conn.init(grid);
+		for (Bridge b : grid.getAllBridges()) {
+			if (scores[b.index] > 0) {
+				conn.connect(b);
+			}
+		}
+		if (conn.isConnected()) {
+			return cuts;
+		}
+		boolean[] done = new boolean[grid.getAllIslands().size()];
+		for (IslandBase ib : grid.getAllSolidIslands()) {
+			int root = conn.find(ib.index);
+			if (done[root]) {
+				continue;
+			}
+			done[root] = true;
+			ArrayList<Integer> clause = new ArrayList<Integer>();
+			for (Bridge b : grid.getAllBridges()) {
+				boolean from = conn.find(b.fromIsland.index) == root;
+				boolean to = conn.find(b.toIsland.index) == root;
+				if ((from != to) && (scoreVar(b, 1) != 0)) {
+					clause.add(scoreVar(b, 1));
+				}
+			}
+			cuts.add(toArray(clause));
+		}
+		return cuts;
+	}
+
+	/**
+	 * @param scores score of every bridge by bridge index
+	 * @return a clause ruling out exactly these bridge scores
+	 */
+	public int[] exclude(int[] scores) {
+		ArrayList<Integer> clause = new ArrayList<Integer>();
+		for (int b = 0; b < scoreVars.length; b++) {
+			int[] vars = scoreVars[b];
+			if (scores[b] > 0) {
+				clause.add(-vars[scores[b]-1]);
+			}
+			if (scores[b] < vars.length) {
+				clause.add(vars[scores[b]]);
+			}
+		}
+		return toArray(clause);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: CnfEncoder source [name]");
+			return;
+		}
+		PrintStream formula = System.out;
+		GridDefinition grid = null;
+		String name = (args.length > 1) ? args[1] : null;
+		if (new File(args[0]).isFile()) {
+			try (PuzzleReader reader = new PuzzleReader(new FileReader(args[0]), args[0])) {
+				while ((grid == null) && reader.hasNext()) {
+					PuzzleSpec p = reader.next();
+					if ((name == null) || name.equals(p.getName())) {
+						grid = p.makeGrid();
+						name = p.getName();
+					}
+				}
+			}
+		}
+		else {
+			name = args[0];
+			grid = new PuzzleDefinition().getPuzzleGrid(name);
+		}
+		if (grid == null) {
+			System.err.println("No puzzle found in " + args[0]);
+			return;
+		}
+		CnfEncoder encoder = new CnfEncoder(grid);
+		encoder.getCnf().write(formula, name,
+				"the first variables order encode the bridge scores, in bridge order",
+				"connectivity is not encoded, it needs cut clauses added lazily");
+	}
+}
@@ -0,0 +1,174 @@
+import java.util.Arrays;
+
+/**
+ * Union-find of the islands joined by bridges that are known to be used.
+ *
+ * Two islands are in the same component once there is a path between
+ * them of bridges whose minimum score is non-zero. Components are only
+ * ever merged during a search, so union by size is used without path
+ * compression: find is then O(log n), and each merge changes just a
+ * parent link, a size and the component count, which are recorded on
+ * the trail so that merges are undone when the solver backtracks.
+ *
+ * @author legge
+ *
+ */
+public class Connectivity implements Undoable {
+
+	// Field codes used when recording changes on the trail,
+	// parent and size entries are encoded with the island index
+	private static final int FIELD_COMPONENTS = -1;
+	private static final int FIELD_PARENT = 0;
+	private static final int FIELD_SIZE = 1;
+
+	private final int[] parent;
+	private final int[] size;
+	private int numComponents;
+	private Trail trail;
+
+	/**
+	 * @param numIslands number of islands in the grid (solid and null)
+	 */
+	public Connectivity(int numIslands) {
+		parent = new int[numIslands];
+		size = new int[numIslands];
+		numComponents = 0;
+		trail = null;
+	}
+
+	/**
+	 * Attach the undo log which records all subsequent merges
+	 * @param t Trail to record changes on (null to stop recording)
+	 */
+	public void setTrail(Trail t) {
+		trail = t;
+	}
+
+	/**
+	 * Start with every solid island in a component of its own
+	 * @param g the grid definition
+	 */
+	public void init(GridDefinition g) {
+		for (int i = 0; i < parent.length; i++) {
+			parent[i] = i;
+		}
+		Arrays.fill(size, 1);
+		numComponents = g.getAllSolidIslands().size();
+	}
+
+	/**
+	 * Copy the components of another state of the same grid
+	 * @param other connectivity to copy from
+	 */
+	public void copyFrom(Connectivity other) {
+		for (int i = 0; i < parent.length; i++) {
+			assign(FIELD_PARENT, i, other.parent[i]);
+			assign(FIELD_SIZE, i, other.size[i]);
+		}
+		if (numComponents != other.numComponents) {
+			record(FIELD_COMPONENTS, numComponents);
+			numComponents = other.numComponents;
+		}
+	}
+
+	/**
+	 * @param i island index
+	 * @return index of the island representing the component of island i
+	 */
+	public int find(int i) {
+		while (parent[i] != i) {
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Merge the components of two islands
+	 * @param a island index
+	 * @param b island index
+	 * @return true if they were in different components
+	 */
+	public boolean union(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra == rb) {
+			return false;
+		}
+		if (size[ra] < size[rb]) {
+			int t = ra;
+			ra = rb;
+			rb = t;
+		}
+		assign(FIELD_PARENT, rb, ra);
+		assign(FIELD_SIZE, ra, size[ra] + size[rb]);
+		record(FIELD_COMPONENTS, numComponents);
+		numComponents--;
+		return true;
+	}
+
+	/**
+	 * Merge the components at either end of a bridge
+	 * @param b bridge that is known to be used
+	 * @return true if the bridge joined two components
+	 */
+	public boolean connect(Bridge b) {
+		return union(b.fromIsland.index, b.toIsland.index);
+	}
+
+	/**
+	 * @param a island
+	 * @param b island
+	 * @return true if the islands are joined by known bridges
+	 */
+	public boolean sameComponent(IslandBase a, IslandBase b) {
+		return find(a.index) == find(b.index);
+	}
+
+	/**
+	 * @return number of components the solid islands currently form
+	 */
+	public int getNumComponents() {
+		return numComponents;
+	}
+
+	/**
+	 * @return true if all solid islands are joined by known bridges,
+	 *         as they are when there are none
+	 */
+	public boolean isConnected() {
+		return numComponents <= 1;
+	}
+
+	private void assign(int field, int i, int v) {
+		int[] values = (field == FIELD_PARENT) ? parent : size;
+		if (values[i] != v) {
+			record((i << 1) | field, values[i]);
+			values[i] = v;
+		}
+	}
+
+	private void record(int field, int oldValue) {
+		if (trail != null) {
+			trail.record(this, field, oldValue);
+		}
+	}
+
+	@Override
+	public int swapField(int field, int v) {
+		int old;
+		if (field == FIELD_COMPONENTS) {
+			old = numComponents;
+			numComponents = v;
+			return old;
+		}
+		int[] values = ((field & 1) == FIELD_PARENT) ? parent : size;
+		int i = field >> 1;
+		old = values[i];
+		values[i] = v;
+		return old;
+	}
+
+	public String Dump() {
+		return String.format("NumComponents %d", numComponents);
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Branch at the most constrained island: the unsolved island with the
+ * fewest choices left in its bridges, among the islands of constraints
+ * with a target. Of that island's unsolved constraints, the one with the
+ * fewest candidates is branched on.
+ *
+ * Only the candidates of the chosen island's constraints are counted,
+ * not those of every constraint.
+ *
+ * @author legge
+ *
+ */
+public class ConstrainedIslandHeuristic implements BranchHeuristic {
+
+	@Override
+	public void start(GridDefinition grid) {
+	}
+
+	@Override
+	public Constraint select(Solver solver, SolverState state) {
+		IslandBase island = null;
+		int fewest = 0;
+		int ties = 0;
+		Constraint any = null;
+		for (Constraint c : state.getGrid().getAllConstraints()) {
+			if (!BranchHeuristic.isOpen(c, state)) {
+				continue;
+			}
+			any = c;
+			for (IslandBase ib : c.solidIslands) {
+				if (state.tracker(ib).isSolved()) {
+					continue;
+				}
+				int choices = choices(ib, state);
+				if ((island == null) || (choices < fewest)) {
+					island = ib;
+					fewest = choices;
+					ties = 1;
+				}
+				else if ((choices == fewest) && (ib != island) && solver.preferTie(++ties)) {
+					island = ib;
+				}
+			}
+		}
+		if (island == null) {
+			// Only constraints whose islands are all solved are left
+			return any;
+		}
+		Constraint best = null;
+		long bestCount = 0;
+		ties = 0;
+		for (Constraint c : island.getConstraints()) {
+			if (!BranchHeuristic.isOpen(c, state)) {
+				continue;
+			}
+			long count = solver.candidateBound(c);
+			if ((best == null) || (count < bestCount)) {
+				best = c;
+				bestCount = count;
+				ties = 1;
+			}
+			else if ((count == bestCount) && solver.preferTie(++ties)) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	// Sum of max less min score over the island's unsolved bridges
+	private static int choices(IslandBase ib, SolverState state) {
+		int n = 0;
+		for (Bridge b : ib.getBridges()) {
+			TrackerBridge tb = state.tracker(b);
+			if (!tb.isSolved()) {
+				n += tb.maxMinusMin();
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public double measure(SolverState state) {
+		return 0;
+	}
+
+	@Override
+	public void tried(Constraint c, SolverState state, double before, boolean failed) {
+	}
+}
@@ -13,7 +13,7 @@ import java.util.stream.Stream;
  * The score of a constraint is the sum of the score of the islands within the constraint
  * 
  * The class members are mostly read-only once defined, with constraint scores and logic for 
- * a solution contained only in a tracker field.
+ * a solution contained only in the tracker for the constraint held by a SolverState.
  * 
  * @author legge
  *
@@ -28,11 +28,10 @@ public class Constraint {
 	public ArrayList<Bridge> internalBridges;
 	public ArrayList<Bridge> externalBridges;
 	
-	public TrackerConstraint tracker;
+	int index; // position in the grid's list of all constraints
 	
 	public Constraint(int t) {
 		id = String.format("%d", UniqueId.getUid());
-		tracker = new TrackerConstraint();
 		target = t;
 		
 		solidIslands = new ArrayList<IslandBase>();
@@ -58,6 +57,14 @@ public class Constraint {
 		bridges.add(b);
 	}
 	
+	/**
+	 * 
+	 * @return index of this constraint in the grid's list of all constraints
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
 	/**
 	 * 
 	 * @return The target score for the constraint
@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Domain over weighted degree: branch on the constraint with the fewest
+ * choices left in its bridges relative to how often its candidates have
+ * failed.
+ *
+ * The choices left are the sum of max less min score over the unsolved
+ * bridges of the constraint (see TrackerConstraint.openChoices), so no
+ * candidates need counting to choose. Each time a candidate fails in
+ * propagation the constraints where the failure was found have their
+ * weight go up: the first tracker left invalid (see Propagator.getFailed)
+ * is a constraint, or a bridge or island whose constraints all take the
+ * blame. Constraints that keep failing are branched on earlier, where
+ * their failures cut off more of the search.
+ *
+ * @author legge
+ *
+ */
+public class DomWdegHeuristic implements BranchHeuristic {
+
+	// Failures of each constraint's candidates, by constraint index
+	private AtomicIntegerArray weights;
+
+	public DomWdegHeuristic() {
+		weights = new AtomicIntegerArray(0);
+	}
+
+	@Override
+	public void start(GridDefinition grid) {
+		weights = new AtomicIntegerArray(grid.getAllConstraints().size());
+	}
+
+	@Override
+	public Constraint select(Solver solver, SolverState state) {
+		Constraint best = null;
+		double bestScore = 0;
+		int ties = 0;
+		for (Constraint c : state.getGrid().getAllConstraints()) {
+			if (!BranchHeuristic.isOpen(c, state)) {
+				continue;
+			}
+			double score = (double) state.tracker(c).openChoices() / (1 + weights.get(c.getIndex()));
+			if ((best == null) || (score < bestScore)) {
+				best = c;
+				bestScore = score;
+				ties = 1;
+			}
+			else if ((score == bestScore) && solver.preferTie(++ties)) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public double measure(SolverState state) {
+		return 0;
+	}
+
+	@Override
+	public void tried(Constraint c, SolverState state, double before, boolean failed) {
+		if (!failed) {
+			return;
+		}
+		Tracker t = state.getPropagator().getFailed();
+		if (t instanceof TrackerConstraint) {
+			weights.incrementAndGet(((TrackerConstraint) t).constraint.getIndex());
+		}
+		else if (t instanceof TrackerBridge) {
+			for (Constraint fc : ((TrackerBridge) t).bridge.constraints) {
+				weights.incrementAndGet(fc.getIndex());
+			}
+		}
+		else if (t instanceof TrackerIsland) {
+			for (Constraint fc : ((TrackerIsland) t).island.constraints) {
+				weights.incrementAndGet(fc.getIndex());
+			}
+		}
+		else {
+			// The failure wasn't found by an update, blame the branch
+			weights.incrementAndGet(c.getIndex());
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Branch on the constraint with the fewest candidate solutions, by the
+ * solver's cheap upper bound on the number of candidates. The default.
+ *
+ * @author legge
+ *
+ */
+public class FewestCandidatesHeuristic implements BranchHeuristic {
+
+	@Override
+	public void start(GridDefinition grid) {
+	}
+
+	@Override
+	public Constraint select(Solver solver, SolverState state) {
+		Constraint best = null;
+		long bestCount = 0;
+		int ties = 0;
+		for (Constraint c : state.getGrid().getAllConstraints()) {
+			if (!BranchHeuristic.isOpen(c, state)) {
+				continue;
+			}
+			long count = solver.candidateBound(c);
+			if ((best == null) || (count < bestCount)) {
+				best = c;
+				bestCount = count;
+				ties = 1;
+			}
+			else if ((count == bestCount) && solver.preferTie(++ties)) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public double measure(SolverState state) {
+		return 0;
+	}
+
+	@Override
+	public void tried(Constraint c, SolverState state, double before, boolean failed) {
+	}
+}
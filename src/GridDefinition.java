@@ -1,9 +1,8 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 
 /**
@@ -30,10 +29,18 @@ public class GridDefinition {
 	private IslandBase[][] grid;
 	
 	// For the purposes of processing we maintain lists of all constraints, islands and bridges.
-	private ArrayList<Constraint> allConstraints;
-	private ArrayList<Bridge> allBridges;
-	private ArrayList<IslandBase> allIslands;
-	private ArrayList<IslandBase> allSolidIslands;
+	// Each entity's index is its position in its list.
+	private final ArrayList<Constraint> allConstraints;
+	private final ArrayList<Bridge> allBridges;
+	private final ArrayList<IslandBase> allIslands;
+	private final ArrayList<IslandBase> allSolidIslands;
+	// Read-only views of the lists, handed out instead of copies
+	private final List<Constraint> constraintsView;
+	private final List<Bridge> bridgesView;
+	private final List<IslandBase> islandsView;
+	private final List<IslandBase> solidIslandsView;
+	// Sets of distinct island values making up each constraint target
+	private SumTable sums;
 			
 	/**
 	 * GridDefinition
@@ -49,6 +56,11 @@ public class GridDefinition {
 		allBridges = new ArrayList<Bridge>();
 		allIslands = new ArrayList<IslandBase>();
 		allSolidIslands = new ArrayList<IslandBase>();
+		constraintsView = Collections.unmodifiableList(allConstraints);
+		bridgesView = Collections.unmodifiableList(allBridges);
+		islandsView = Collections.unmodifiableList(allIslands);
+		solidIslandsView = Collections.unmodifiableList(allSolidIslands);
+		sums = new SumTable(0);
 	}
 	
 	// Get / Set
@@ -65,28 +77,64 @@ public class GridDefinition {
 	public IslandBase get(int r, int c) {
 		return grid[r][c];
 	}
-	/** @return A reference to the list of all constraints */
-	@SuppressWarnings("unchecked")
-	public ArrayList<Constraint> getAllConstraints() {
-		return (ArrayList<Constraint>) allConstraints.clone();
+	/** @return A read-only view of the list of all constraints, in index order */
+	public List<Constraint> getAllConstraints() {
+		return constraintsView;
 	}
 
-	/** @return A reference to the list of all bridges */
-	@SuppressWarnings("unchecked")
-	public ArrayList<Bridge> getAllBridges() {
-		return (ArrayList<Bridge>) allBridges.clone();
+	/** @return A read-only view of the list of all bridges, in index order */
+	public List<Bridge> getAllBridges() {
+		return bridgesView;
 	}
 
-	/** @return A reference to the list of all islands (including virtual ones and constraint specs) */
-	@SuppressWarnings("unchecked")
-	public ArrayList<IslandBase> getAllIslands() {
-		return (ArrayList<IslandBase>) allIslands.clone();
+	/** @return A read-only view of the list of all islands (including virtual ones and constraint specs), in index order */
+	public List<IslandBase> getAllIslands() {
+		return islandsView;
 	}
 
-	/** @return A reference to the list of all solid (bridgeable) islands */
-	@SuppressWarnings("unchecked")
-	public ArrayList<IslandBase> getAllSolidIslands() {
-		return (ArrayList<IslandBase>) allSolidIslands.clone();
+	/** @return Number of constraints */
+	public int getNumConstraints() {
+		return allConstraints.size();
+	}
+	/** @return Number of bridges */
+	public int getNumBridges() {
+		return allBridges.size();
+	}
+	/** @return Number of islands (including virtual ones and constraint specs) */
+	public int getNumIslands() {
+		return allIslands.size();
+	}
+
+	/**
+	 * @param index constraint index
+	 * @return The constraint with the index
+	 */
+	public Constraint getConstraint(int index) {
+		return allConstraints.get(index);
+	}
+	/**
+	 * @param index bridge index
+	 * @return The bridge with the index
+	 */
+	public Bridge getBridge(int index) {
+		return allBridges.get(index);
+	}
+	/**
+	 * @param index island index
+	 * @return The island with the index
+	 */
+	public IslandBase getIsland(int index) {
+		return allIslands.get(index);
+	}
+
+	/** @return The sets of distinct values making up each target, built by finalizeGrid */
+	public SumTable getSums() {
+		return sums;
+	}
+
+	/** @return A read-only view of the list of all solid (bridgeable) islands, in index order */
+	public List<IslandBase> getAllSolidIslands() {
+		return solidIslandsView;
 	}
 	
 	/**
@@ -105,11 +153,6 @@ public class GridDefinition {
 		}
 	}
 
-	// Helper for filter
-	private boolean aLessThanB(int a, int b) {
-		return a < b;
-	}
-	
 	
 	/** finalizeGrid()
 	 * This creates a fully instantiated grid definition based on the
@@ -131,83 +174,104 @@ public class GridDefinition {
 		// Build list of all islands for easier iteration
 		for (int i=0; i < numRows; i++) {	
 			for (int j=0; j < numCols; j++) {	
+				grid[i][j].index = allIslands.size();
 				allIslands.add( grid[i][j]);
 			}
 		}
 		// Find all constraint box islands and generate a constraint group (of islands).
 		// A constraint box is an island that defines the expected total
-		// for islands in each direction (left, up, right, down) from itself
-		
-		IslandConstraint[] constraintBoxIslands = allIslands.stream()
-				.filter(ai -> ai.isConstraint()).toArray(IslandConstraint[]::new);
-		for (IslandConstraint ic : constraintBoxIslands) {
+		// for islands in each direction (left, up, right, down) from itself.
+		// The islands are taken straight from the grid row and column of the box.
+		boolean[] rowHasBox = new boolean[numRows];
+		boolean[] colHasBox = new boolean[numCols];
+		for (IslandBase ib : allIslands) {
+			if (!ib.isConstraint()) {
+				continue;
+			}
+			IslandConstraint ic = (IslandConstraint) ib;
 			ConstraintBox cb = ic.getConstraintBox();
-			Stream<IslandBase> iStream; 
-			iStream = allIslands.stream()
-					.filter(ai -> ai.matchPos(ic.row, -1) )
-					.filter(s -> aLessThanB(s.col, ic.col));
-			assignConstraints(
-					iStream.toArray(IslandBase[]::new), 
-					cb.getConstraintForDirection(Direction.left)
-			);	
-			iStream = allIslands.stream()
-					.filter(ai -> ai.matchPos(ic.row, -1) )
-					.filter(s -> aLessThanB(ic.col, s.col));
-			assignConstraints( 
-					iStream.toArray(IslandBase[]::new), 
-					cb.getConstraintForDirection(Direction.right)
-			);	
-			iStream = allIslands.stream()
-					.filter(ai -> ai.matchPos(-1, ic.col))
-					.filter(s -> aLessThanB(s.row, ic.row));
-			assignConstraints( 
-					iStream.toArray(IslandBase[]::new), 
-					cb.getConstraintForDirection(Direction.up)
-			);	
-			iStream = allIslands.stream()
-					.filter(ai -> ai.matchPos(-1, ic.col) )
-					.filter(s -> aLessThanB(ic.row, s.row));
-			assignConstraints( 
-					iStream.toArray(IslandBase[]::new), 
-					cb.getConstraintForDirection(Direction.down)
-			);	
+			assignConstraints(rowSpan(ic.row, 0, ic.col),
+					cb.getConstraintForDirection(Direction.left));
+			assignConstraints(rowSpan(ic.row, ic.col+1, numCols),
+					cb.getConstraintForDirection(Direction.right));
+			assignConstraints(colSpan(ic.col, 0, ic.row),
+					cb.getConstraintForDirection(Direction.up));
+			assignConstraints(colSpan(ic.col, ic.row+1, numRows),
+					cb.getConstraintForDirection(Direction.down));
+			rowHasBox[ic.row] = true;
+			colHasBox[ic.col] = true;
+		}
+		// Create null constraint boxes for each row/col with no constraint box
+		for (int row = 0; row < numRows; row++) {
+			if (!rowHasBox[row]) {
+				assignConstraints(rowSpan(row, 0, numCols), new Constraint(-1));
+			}
+		}
+		for (int col = 0; col < numCols; col++) {
+			if (!colHasBox[col]) {
+				assignConstraints(colSpan(col, 0, numRows), new Constraint(-1));
+			}
 		}
-		// Handle rows/cols with no constraint boxes;
-		// Use process of elimination to find rows/cols without constraint boxes
-		TreeSet<Integer> prows = IntStream.range(0, numRows).boxed()
-				.collect(Collectors.toCollection(TreeSet::new));
-		TreeSet<Integer> pcols = IntStream.range(0, numCols).boxed()
-				.collect(Collectors.toCollection(TreeSet::new));
-		allIslands.stream().filter(i -> i.isConstraint())
-			.forEach(i -> { prows.remove(i.row); pcols.remove(i.col);} );
-		
-		// Create null constraint boxes for each unassigned rows/cols
-		prows.stream().forEach(
-				row -> assignConstraints( 
-						allIslands.stream()
-							.filter(i -> i.matchPos(row, -1) )
-							.toArray(IslandBase[]::new),
-						new Constraint(-1)
-						));
-		pcols.stream().forEach(
-				col -> assignConstraints( 
-						allIslands.stream()
-							.filter(i -> i.matchPos(-1, col) )
-							.toArray(IslandBase[]::new),
-						new Constraint(-1)
-						));
 		
-		allSolidIslands = allIslands.stream().filter( i -> i.isSolid())
-			.collect(Collectors.toCollection(ArrayList::new));
+		for (IslandBase ib : allIslands) {
+			if (ib.isSolid()) {
+				allSolidIslands.add(ib);
+			}
+		}
 		allConstraints.stream().forEach(c -> c.checkInternalExternalBridges());
+		findCrossings();
+		int maxTarget = 0;
+		for (Constraint c : allConstraints) {
+			maxTarget = Math.max(maxTarget, c.Target());
+		}
+		sums = new SumTable(maxTarget);
+	}
+
+	// Record on each bridge the other bridges through its null islands,
+	// once each, so the solver doesn't search the null islands every time.
+	private void findCrossings() {
+		int[] seenBy = new int[allBridges.size()];
+		Arrays.fill(seenBy, -1);
+		ArrayList<Bridge> found = new ArrayList<Bridge>();
+		for (Bridge b : allBridges) {
+			found.clear();
+			for (IslandBase ib : b.iNulls) {
+				for (Bridge other : ib.bridges) {
+					if ((other != b) && (seenBy[other.index] != b.index)) {
+						seenBy[other.index] = b.index;
+						found.add(other);
+					}
+				}
+			}
+			b.crossings = found.toArray(new Bridge[found.size()]);
+		}
 	}
 
 	
+	// Islands of a row from column "from" up to (not including) column "to"
+	private IslandBase[] rowSpan(int row, int from, int to) {
+		IslandBase[] span = new IslandBase[Math.max(0, to - from)];
+		for (int j = from; j < to; j++) {
+			span[j - from] = grid[row][j];
+		}
+		return span;
+	}
+	
+	// Islands of a column from row "from" up to (not including) row "to"
+	private IslandBase[] colSpan(int col, int from, int to) {
+		IslandBase[] span = new IslandBase[Math.max(0, to - from)];
+		for (int i = from; i < to; i++) {
+			span[i - from] = grid[i][col];
+		}
+		return span;
+	}
+	
 	private void assignConstraints(IslandBase[] ilist, Constraint cs) {
 		if (ilist.length == 0) {
 			return;
 		}
 		ArrayList<IslandBase> islandList = new ArrayList<IslandBase>();
+		cs.index = allConstraints.size();
 		allConstraints.add(cs);
 		IslandSolid lastSolid = null;
 		
@@ -223,6 +287,7 @@ public class GridDefinition {
 				else {
 					// Found a pair of solids. Create a bridge
 					Bridge b = new Bridge(lastSolid, ib);
+					b.index = allBridges.size();
 					allBridges.add(b);
 					// Bridge associates to constraint set.
 					b.addConstraint(cs);
@@ -256,7 +321,7 @@ public class GridDefinition {
 	 * printGrid
 	 * print a simple view of the grid to stdout
 	 */
-	public void printGrid() {
+	public void printGrid(SolverState state) {
 		for (int i=0; i< numRows; i++) {
 			StringBuilder sb = new StringBuilder();
 			StringBuilder vbUp = new StringBuilder();
@@ -268,13 +333,13 @@ public class GridDefinition {
 				}
 				StringBuilder ms = new StringBuilder("");
 				// sb.append(ft(grid[i][j].toString()));
-				if (grid[i][j].numBridgesInDirection(Direction.up)>0) {
+				if (grid[i][j].numBridgesInDirection(state, Direction.up)>0) {
 					vbUp.append(ft("|"));
 				}	
-				if (grid[i][j].numBridgesInDirection(Direction.down)>0) {
+				if (grid[i][j].numBridgesInDirection(state, Direction.down)>0) {
 					vbDn.append(ft("|"));
 				}	
-				if (grid[i][j].numBridgesInDirection(Direction.left)>0) {
+				if (grid[i][j].numBridgesInDirection(state, Direction.left)>0) {
 					ms.append("->");
 				}
 				if (grid[i][j].isSolid()) {
@@ -284,7 +349,7 @@ public class GridDefinition {
 					ms.append("x");
 				}
 				
-				if (grid[i][j].numBridgesInDirection(Direction.right)>0) {
+				if (grid[i][j].numBridgesInDirection(state, Direction.right)>0) {
 					ms.append("<-");
 				}	
 				sb.append(ft(ms.toString()));
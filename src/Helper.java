@@ -1,9 +1,19 @@
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
 /**
  * Logging helper class to control debugging output
  * 
  * Allows conditions to be triggered for output to be active.
  * 
+ * Hot paths should hold one helper per unit in a static field (see
+ * forUnit) and pass messages as a Supplier or a format with arguments,
+ * so that nothing is allocated or formatted unless the output is active.
+ * 
+ * Log output goes to standard output, errors to standard error so that
+ * they don't mix with the output of the command line tools.
+ * 
  * Should be replaced by a standard logger class.
  * 
  * @author legge
@@ -11,6 +21,9 @@
  */
 public class Helper {
 	
+	// Shared helpers, one per unit
+	private static final ConcurrentHashMap<String, Helper> units = new ConcurrentHashMap<String, Helper>();
+	
 	private boolean active;
 	private boolean suppressErrors;
 	private String unit;
@@ -23,16 +36,29 @@ public class Helper {
 		sBuilder = new StringBuilder();
 	}
 	
+	/**
+	 * The shared helper of a unit, so that turning on its output
+	 * turns it on wherever the unit logs
+	 * @param u Unit
+	 * @return the helper of the unit, created on first use
+	 */
+	public static Helper forUnit(String u) {
+		return units.computeIfAbsent(u, Helper::new);
+	}
+	
 	private static void Show(String message) {
 		System.out.println(message);
 	}
+	private static void ShowError(String message) {
+		System.err.println(message);
+	}
 	/**
-	 * Print a message 
+	 * Print an error message 
 	 * @param unit Unit
 	 * @param s Message
 	 */
 	public static void Print(String unit, String s) {
-		Show(String.format("%s:%s", unit, s));
+		ShowError(unit + ":" + s);
 	}
 	/**
 	 * Print a message if condition is satisfied
@@ -54,6 +80,13 @@ public class Helper {
 	public void debugIfAnd(boolean d) {
 		active = d && active;
 	}
+	/**
+	 * Check before building an expensive message
+	 * @return true if messages are shown
+	 */
+	public boolean isActive() {
+		return active;
+	}
 	
 	public void resetSBuilder() {
 		sBuilder.delete(0,  sBuilder.length());
@@ -80,7 +113,64 @@ public class Helper {
 	 */
 	public void Log(boolean cond, String message) {
 		if (cond) {
-			Show(String.format("%s:%s", unit, message));
+			Show(unit + ":" + message);
+		}
+	}
+	/**
+	 * Log message including unit id, the message is only built if shown
+	 * @param message
+	 */
+	public void Log(Supplier<String> message) {
+		Log(active, message);
+	}
+	/**
+	 * Log message including unit id, the message is only built if shown
+	 * @param cond  condition under which to show message
+	 * @param message
+	 */
+	public void Log(boolean cond, Supplier<String> message) {
+		if (cond) {
+			Show(unit + ":" + message.get());
+		}
+	}
+	/**
+	 * Log formatted message including unit id, formatted only if shown
+	 * @param format String.format format
+	 * @param arg
+	 */
+	public void Log(String format, Object arg) {
+		Log(active, format, arg);
+	}
+	/**
+	 * Log formatted message including unit id, formatted only if shown
+	 * @param cond  condition under which to show message
+	 * @param format String.format format
+	 * @param arg
+	 */
+	public void Log(boolean cond, String format, Object arg) {
+		if (cond) {
+			Show(unit + ":" + String.format(format, arg));
+		}
+	}
+	/**
+	 * Log formatted message including unit id, formatted only if shown
+	 * @param format String.format format
+	 * @param arg1
+	 * @param arg2
+	 */
+	public void Log(String format, Object arg1, Object arg2) {
+		Log(active, format, arg1, arg2);
+	}
+	/**
+	 * Log formatted message including unit id, formatted only if shown
+	 * @param cond  condition under which to show message
+	 * @param format String.format format
+	 * @param arg1
+	 * @param arg2
+	 */
+	public void Log(boolean cond, String format, Object arg1, Object arg2) {
+		if (cond) {
+			Show(unit + ":" + String.format(format, arg1, arg2));
 		}
 	}
 	
@@ -90,7 +180,7 @@ public class Helper {
 	 */
 	public void Error(String message) {
 		if (!suppressErrors) {
-			Show(String.format("%s:%s", unit, message));
+			ShowError(unit + ":" + message);
 		}
 	}
 	
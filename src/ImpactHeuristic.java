@@ -0,0 +1,82 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Impact based branching: branch on the constraint whose candidates have
+ * cut the search space the most, relative to how many candidates it has.
+ *
+ * The search space is measured as the log of the product of the bridge
+ * domain sizes, which the tracker data keeps up to date (see
+ * SolverState.getLogSearchSpace). The impact of a candidate is the fraction of the space
+ * it removed, including the propagation it caused, and 1 if propagation
+ * failed. Constraints are scored by their candidate count times the
+ * space their candidates leave on average, so a constraint not yet tried
+ * is scored by its candidate count alone.
+ *
+ * The impacts are summed in fixed point in atomic arrays, so the branches
+ * of a parallel search record them without locking. A sum and its count
+ * are read separately, so an average may be a candidate out of step.
+ *
+ * @author legge
+ *
+ */
+public class ImpactHeuristic implements BranchHeuristic {
+
+	// Impacts are summed in units of 1/scale
+	private static final double scale = 1 << 20;
+
+	// Sum and number of the impacts of each constraint's candidates,
+	// by constraint index
+	private AtomicLongArray impacts;
+	private AtomicIntegerArray counts;
+
+	public ImpactHeuristic() {
+		impacts = new AtomicLongArray(0);
+		counts = new AtomicIntegerArray(0);
+	}
+
+	@Override
+	public void start(GridDefinition grid) {
+		impacts = new AtomicLongArray(grid.getNumConstraints());
+		counts = new AtomicIntegerArray(grid.getNumConstraints());
+	}
+
+	@Override
+	public Constraint select(Solver solver, SolverState state) {
+		Constraint best = null;
+		double bestScore = 0;
+		int ties = 0;
+		for (Constraint c : state.getGrid().getAllConstraints()) {
+			if (!BranchHeuristic.isOpen(c, state)) {
+				continue;
+			}
+			double score = solver.candidateBound(c) * (1 - averageImpact(c));
+			if ((best == null) || (score < bestScore)) {
+				best = c;
+				bestScore = score;
+				ties = 1;
+			}
+			else if ((score == bestScore) && solver.preferTie(++ties)) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	private double averageImpact(Constraint c) {
+		int n = counts.get(c.getIndex());
+		return (n == 0) ? 0 : impacts.get(c.getIndex()) / scale / n;
+	}
+
+	@Override
+	public double measure(SolverState state) {
+		return state.getLogSearchSpace();
+	}
+
+	@Override
+	public void tried(Constraint c, SolverState state, double before, boolean failed) {
+		double impact = failed ? 1 : 1 - Math.pow(2, measure(state) - before);
+		impacts.addAndGet(c.getIndex(), Math.round(impact * scale));
+		counts.incrementAndGet(c.getIndex());
+	}
+}
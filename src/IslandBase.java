@@ -16,8 +16,7 @@ public class IslandBase  implements Comparable<Object> {
 	int row;   // x , y coordinates in grid
 	int col;
 	public String id;
-	
-	public TrackerIsland tracker;
+	int index; // position in the grid's list of all islands
 	
 	// list of bridges connected to this island
 	public ArrayList<Bridge> bridges;  
@@ -28,7 +27,6 @@ public class IslandBase  implements Comparable<Object> {
 	public IslandBase(int r, int c) {
 		row = r;
 		col = c;
-		tracker = new TrackerIsland();
 		bridges = new ArrayList<Bridge>();
 		constraints= new ArrayList<Constraint>();
 		id = String.format("%d/%d", r,c);
@@ -62,10 +60,10 @@ public class IslandBase  implements Comparable<Object> {
 
 	/**
 	 * 
-	 * @return tracker object for this island
+	 * @return index of this island in the grid's list of all islands
 	 */
-	public TrackerIsland getTracker() {
-		return tracker;
+	public int getIndex() {
+		return index;
 	}
 
 	/**
@@ -134,16 +132,17 @@ public class IslandBase  implements Comparable<Object> {
 	
 	/**
 	 * Get the number of bridge spans from this node in a given direction
+	 * @param state solver state holding the bridge scores
 	 * @param d direction of interest
 	 * @return the number of actual spans in the given direction
 	 */
-	public int numBridgesInDirection(Direction d) {
+	public int numBridgesInDirection(SolverState state, Direction d) {
 		Iterator<Bridge> btr = bridges.iterator();
 		int num = 1;
 		while (btr.hasNext()) {
 			Bridge b = btr.next();
 			if (b.bridgeInDirection(this, d)) {
-				num += b.tracker.getCurrentScore();
+				num += state.tracker(b).getCurrentScore();
 			}
 		}
 		return num;
@@ -179,9 +178,10 @@ public class IslandBase  implements Comparable<Object> {
 	
 	/**
 	 * 
+	 * @param state solver state to show
 	 * @return Label to use in the view - overridden by sub classing
 	 */
-	public String getLabel() {
+	public String getLabel(SolverState state) {
 		return "Unk";
 	}
 	
@@ -52,7 +52,7 @@ public class IslandConstraint extends IslandNull {
 	 * Label to use in the view of this island
 	 */
 	@Override
-	public String getLabel() {
+	public String getLabel(SolverState state) {
 		return constraintBox.getLabel();
 	}
 	
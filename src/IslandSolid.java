@@ -32,11 +32,12 @@ public class IslandSolid extends IslandBase {
 	/**
 	 * String label for use in the view
 	 */
-	public String getLabel() {
+	public String getLabel(SolverState state) {
+		TrackerIsland tracker = state.tracker(this);
 		return String.format("%-2d/%d\n%d", 
-				tracker.minPossibleScore,
-				tracker.maxPossibleScore,
-				tracker.groupId);
+				tracker.getMinPossibleScore(),
+				tracker.getMaxPossibleScore(),
+				tracker.getGroupId());
 	}
 	
 	/**
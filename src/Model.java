@@ -13,9 +13,10 @@ import java.util.Observer;
 public class Model extends Observable {
 
 	GridDefinition grid;
+	SolverState state;
 	/**
 	 * Constructor just creates a grid definition
-	 * 
+	 * and the solver state that is shown for it
 	 */
 	public Model() {
 		
@@ -23,7 +24,9 @@ public class Model extends Observable {
 		
 		//grid = pd.getPuzzleGrid("Puzzle1");
 		grid = pd.getPuzzleGrid("Puzzle2");
-		grid.printGrid();
+		state = new SolverState(grid);
+		state.init();
+		grid.printGrid(state);
 	}
 
 	
@@ -35,6 +38,13 @@ public class Model extends Observable {
 	}
 
 
+	/**
+	 * @return The solver state shown for the puzzle
+	 */
+	public SolverState getState() {
+		return state;
+	}
+
 	/**
 	 * Observable implementation. Notify the UI of changes
 	 */
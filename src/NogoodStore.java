@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+
+/**
+ * Nogoods learned by the solver: sets of bridge scores that can't all
+ * be part of a solution.
+ *
+ * A nogood is learned when a search node fails. The reasons kept for the
+ * tracker values during propagation give the earlier decisions that the
+ * failure of each candidate was derived from, and the bridge scores of
+ * those decisions are the nogood. Any later state in which all those
+ * bridges have those scores is dead, however it was reached.
+ *
+ * Each nogood is listed under one of its bridges with the score it gives
+ * that bridge, one that didn't have the score when the nogood was last
+ * looked at. A state can only break the nogood once that bridge has the
+ * score, so checking a state after a decision only looks at the nogoods
+ * listed under the scores the decision gave. A nogood found to still be
+ * met by some other bridge moves to be listed under that one.
+ *
+ * The store holds a fixed number of nogoods, the oldest being replaced
+ * once it is full.
+ *
+ * @author legge
+ *
+ */
+public class NogoodStore {
+
+	private static class Nogood {
+		final Bridge[] bridges;
+		final int[] scores;
+		// Key of the bridge score the nogood is listed under
+		int watch;
+
+		Nogood(Bridge[] bridges, int[] scores) {
+			this.bridges = bridges;
+			this.scores = scores;
+			watch = -1;
+		}
+	}
+
+	private static final int numScores = TrackerBridge.maxWeight + 1;
+
+	private final Nogood[] nogoods;
+	// Nogoods by the bridge score they are listed under, keyed by
+	// bridge index * numScores + score, null for none
+	private final ArrayList<ArrayList<Nogood>> byScore;
+	private int next;
+	private int size;
+	private long numLearned;
+	private long numHits;
+
+	/**
+	 * @param capacity number of nogoods to keep
+	 * @param numBridges number of bridges in the grid
+	 */
+	public NogoodStore(int capacity, int numBridges) {
+		nogoods = new Nogood[Math.max(1, capacity)];
+		byScore = new ArrayList<ArrayList<Nogood>>(numBridges * numScores);
+		for (int i = 0; i < numBridges * numScores; i++) {
+			byScore.add(null);
+		}
+		next = 0;
+		size = 0;
+		numLearned = 0;
+		numHits = 0;
+	}
+
+	/**
+	 * Learn a nogood
+	 * @param bridges bridges of the nogood, each once
+	 * @param scores score of each bridge
+	 */
+	public void add(ArrayList<Bridge> bridges, ArrayList<Integer> scores) {
+		int[] s = new int[scores.size()];
+		for (int i = 0; i < s.length; i++) {
+			s[i] = scores.get(i);
+		}
+		if (nogoods[next] != null) {
+			byScore.get(nogoods[next].watch).remove(nogoods[next]);
+		}
+		Nogood ng = new Nogood(bridges.toArray(new Bridge[bridges.size()]), s);
+		// The last bridge is from the deepest decision, usually the last
+		// to get its score
+		int last = ng.bridges.length - 1;
+		listUnder(ng, key(ng.bridges[last], s[last]));
+		nogoods[next] = ng;
+		next = (next + 1) % nogoods.length;
+		size = Math.min(size + 1, nogoods.length);
+		numLearned++;
+	}
+
+	private static int key(Bridge b, int score) {
+		return b.index * numScores + score;
+	}
+
+	private void listUnder(Nogood ng, int k) {
+		ArrayList<Nogood> list = byScore.get(k);
+		if (list == null) {
+			list = new ArrayList<Nogood>();
+			byScore.set(k, list);
+		}
+		list.add(ng);
+		ng.watch = k;
+	}
+
+	/**
+	 * Check the nogoods of some bridges, those scored since the state was
+	 * last checked
+	 * @param state solver state to check
+	 * @param changed bridges whose nogoods are checked
+	 * @return the bridges of a nogood whose bridges all have its scores in
+	 *         the state, null if there is none
+	 */
+	public Bridge[] findViolated(SolverState state, Bridge[] changed) {
+		for (Bridge b : changed) {
+			TrackerBridge tb = state.tracker(b);
+			if (tb.getMinPossibleScore() != tb.getMaxPossibleScore()) {
+				continue;
+			}
+			ArrayList<Nogood> list = byScore.get(key(b, tb.getMinPossibleScore()));
+			if (list == null) {
+				continue;
+			}
+			for (int n = 0; n < list.size(); n++) {
+				Nogood ng = list.get(n);
+				int unmet = unmet(ng, state);
+				if (unmet < 0) {
+					numHits++;
+					return ng.bridges;
+				}
+				// List it under the score it is still waiting for
+				int k = key(ng.bridges[unmet], ng.scores[unmet]);
+				if (k != ng.watch) {
+					int end = list.size() - 1;
+					list.set(n, list.get(end));
+					list.remove(end);
+					n--;
+					listUnder(ng, k);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return index of a bridge of the nogood which doesn't have its
+	 *         score in the state, -1 if they all do
+	 */
+	private static int unmet(Nogood ng, SolverState state) {
+		for (int i = ng.bridges.length - 1; i >= 0; i--) {
+			TrackerBridge tb = state.tracker(ng.bridges[i]);
+			if ((tb.getMinPossibleScore() != ng.scores[i])
+					|| (tb.getMaxPossibleScore() != ng.scores[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** @return number of nogoods held */
+	public int size() {
+		return size;
+	}
+	/** @return number of nogoods learned, including those since replaced */
+	public long getNumLearned() {
+		return numLearned;
+	}
+	/** @return number of states found dead by a nogood */
+	public long getNumHits() {
+		return numHits;
+	}
+}
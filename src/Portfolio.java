@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Solves a grid with several differently configured solvers at once, each
+ * on its own thread, taking the result of the first to finish.
+ *
+ * Solve times of a single configuration are heavy tailed: most puzzles
+ * are quick, but the odd one takes far longer under one configuration than
+ * under another. Running a few configurations side by side bounds the
+ * time by the fastest of them. The grid definition is only read while
+ * solving, so all the solvers share it, each with its own solver state.
+ *
+ * A solver finishes when it solves the puzzle or proves it has no
+ * solution. The others are then cancelled. If every solver runs out of
+ * budget instead, the first one's stop reason is the result.
+ *
+ * @author legge
+ *
+ */
+public class Portfolio {
+
+	private final GridDefinition grid;
+	private final ArrayList<String> names;
+	private final ArrayList<Consumer<Solver>> configs;
+	private Solver winner;
+	private String winnerName;
+
+	/**
+	 * @param g finalized grid to solve
+	 */
+	public Portfolio(GridDefinition g) {
+		grid = g;
+		names = new ArrayList<String>();
+		configs = new ArrayList<Consumer<Solver>>();
+		winner = null;
+		winnerName = null;
+	}
+
+	/**
+	 * A portfolio of the default search, randomised restarting searches
+	 * with the learning heuristics, and the SAT backend
+	 * @param g finalized grid to solve
+	 * @return the portfolio
+	 */
+	public static Portfolio standard(GridDefinition g) {
+		Portfolio p = new Portfolio(g);
+		p.add("fewest", s -> {});
+		p.add("domwdeg-luby", s -> {
+			s.setBranchHeuristic(new DomWdegHeuristic());
+			s.setRestarts(RestartStrategy.luby(64));
+			s.setRandomSeed(1);
+		});
+		p.add("impact-geometric", s -> {
+			s.setBranchHeuristic(new ImpactHeuristic());
+			s.setRestarts(RestartStrategy.geometric(100, 1.5));
+			s.setRandomSeed(2);
+		});
+		p.add("sat", s -> s.setSatBackend(true));
+		return p;
+	}
+
+	/**
+	 * Add a solver to the portfolio
+	 * @param name name of the configuration
+	 * @param config sets up a new solver for the grid
+	 */
+	public void add(String name, Consumer<Solver> config) {
+		names.add(name);
+		configs.add(config);
+	}
+
+	/**
+	 * Run every solver until one finishes
+	 * @param budget limits applying to each solver, and through whose
+	 *               token the whole portfolio can be cancelled
+	 * @return the result of the first solver to finish
+	 */
+	public SolveResult solve(SolveBudget budget) {
+		winner = null;
+		winnerName = null;
+		if (configs.isEmpty()) {
+			throw new IllegalStateException("Portfolio has no solvers");
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(configs.size());
+		ExecutorCompletionService<Integer> done = new ExecutorCompletionService<Integer>(pool);
+		ArrayList<Solver> solvers = new ArrayList<Solver>();
+		ArrayList<SolveBudget> budgets = new ArrayList<SolveBudget>();
+		SolveResult[] results = new SolveResult[configs.size()];
+		try {
+			for (int i = 0; i < configs.size(); i++) {
+				Solver s = new Solver(grid);
+				configs.get(i).accept(s);
+				solvers.add(s);
+				budgets.add(budget.child());
+				int member = i;
+				done.submit(() -> {
+					results[member] = solvers.get(member).solve(budgets.get(member));
+					return member;
+				});
+			}
+			SolveResult first = null;
+			for (int n = 0; n < configs.size(); n++) {
+				int member = done.take().get();
+				SolveResult r = results[member];
+				if (!r.isBudgetExhausted()) {
+					winner = solvers.get(member);
+					winnerName = names.get(member);
+					for (SolveBudget b : budgets) {
+						b.getToken().cancel();
+					}
+					return r;
+				}
+				if (first == null) {
+					first = r;
+				}
+			}
+			return first;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return SolveResult.CANCELLED;
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			for (SolveBudget b : budgets) {
+				b.getToken().cancel();
+			}
+			pool.shutdown();
+		}
+	}
+
+	/** @return the solver that finished first, null if none did */
+	public Solver getWinner() {
+		return winner;
+	}
+	/** @return name of the configuration that finished first, null if none did */
+	public String getWinnerName() {
+		return winnerName;
+	}
+}
@@ -0,0 +1,175 @@
+import java.util.ArrayDeque;
+
+/**
+ * Propagation engine for the trackers of a solver state.
+ *
+ * When a tracker changes it schedules the trackers that depend on it rather
+ * than updating them directly. The scheduled trackers are re-evaluated in
+ * rounds: each round updates every tracker that was scheduled during the
+ * previous round, and a tracker is queued at most once per round however
+ * many times it is scheduled. Rounds continue until nothing more is
+ * scheduled, i.e. a fixpoint is reached.
+ *
+ * This keeps the stack depth bounded, and a tracker is recomputed once
+ * per round rather than once for every neighbour that changed.
+ *
+ * The first tracker whose update leaves it invalid is kept, so that the
+ * search can tell which part of the puzzle a failure came from. While
+ * conflicts are being explained, each update is given the reasons of what
+ * the tracker reads as the cause of whatever it changes.
+ *
+ * If a solve budget is set, it is checked every so often and propagation
+ * stops, dropping the scheduled updates, once the budget is exhausted.
+ * The state is then only partly propagated and the search must give up.
+ *
+ * @author legge
+ *
+ */
+public class Propagator {
+
+	private ArrayDeque<Tracker> current;
+	private ArrayDeque<Tracker> next;
+	private boolean running;
+	// Checked every budgetCheckInterval updates, may be null
+	private SolveBudget budget;
+	private static final int budgetCheckInterval = 256;
+	// Counts the updates by tracker type, may be null
+	private SolverMetrics metrics;
+	// First tracker found invalid since the last reset, null if none
+	private Tracker failed;
+	// Tracker data whose reasons are kept, null when not explaining
+	private TrackerData explained;
+
+	// Counters for the work done
+	private long numRounds;
+	private long numUpdates;
+
+	public Propagator() {
+		current = new ArrayDeque<Tracker>();
+		next = new ArrayDeque<Tracker>();
+		running = false;
+		budget = null;
+		metrics = null;
+		failed = null;
+		explained = null;
+		numRounds = 0;
+		numUpdates = 0;
+	}
+
+	/**
+	 * @param b budget to check while propagating, null for none
+	 */
+	public void setBudget(SolveBudget b) {
+		budget = b;
+	}
+
+	/**
+	 * @param m metrics to count the updates in, null for none
+	 */
+	public void setMetrics(SolverMetrics m) {
+		metrics = m;
+	}
+
+	/**
+	 * @param d tracker data to give the cause of each update in, null
+	 *          when conflicts aren't being explained
+	 */
+	public void setExplained(TrackerData d) {
+		explained = d;
+	}
+
+	/**
+	 * Queue a tracker to be re-evaluated in the next round
+	 * @param t tracker to update
+	 */
+	public void schedule(Tracker t) {
+		if (!t.queued) {
+			t.queued = true;
+			next.add(t);
+		}
+	}
+
+	/**
+	 * Update scheduled trackers, round by round, until no more are scheduled.
+	 * Calls made while propagation is already running return straight away,
+	 * the running loop picks up anything they scheduled.
+	 */
+	public void propagate() {
+		if (running) {
+			return;
+		}
+		running = true;
+		long cause = (explained != null) ? explained.getCause() : 0;
+		try {
+			while (!next.isEmpty()) {
+				ArrayDeque<Tracker> round = next;
+				next = current;
+				current = round;
+				numRounds++;
+				Tracker t;
+				while ((t = current.poll()) != null) {
+					t.queued = false;
+					if (explained != null) {
+						explained.setCause(t);
+					}
+					t.update();
+					numUpdates++;
+					if (metrics != null) {
+						metrics.update(t);
+					}
+					if ((failed == null) && !t.isMarkedValid()) {
+						failed = t;
+					}
+					if ((budget != null) && (numUpdates % budgetCheckInterval == 0)
+							&& budget.isExhausted()) {
+						clear();
+						return;
+					}
+				}
+			}
+		}
+		finally {
+			running = false;
+			if (explained != null) {
+				explained.setCause(cause);
+			}
+		}
+	}
+
+	/**
+	 * @return the first tracker an update left invalid since the last
+	 *         reset, null if none
+	 */
+	public Tracker getFailed() {
+		return failed;
+	}
+	/**
+	 * Forget the failed tracker, when the state is valid again
+	 */
+	public void resetFailed() {
+		failed = null;
+	}
+
+	/**
+	 * Drop any scheduled updates
+	 */
+	public void clear() {
+		for (Tracker t : current) {
+			t.queued = false;
+		}
+		for (Tracker t : next) {
+			t.queued = false;
+		}
+		current.clear();
+		next.clear();
+	}
+
+	/** @return number of propagation rounds run */
+	public long getNumRounds() {
+		return numRounds;
+	}
+	/** @return number of tracker updates run */
+	public long getNumUpdates() {
+		return numUpdates;
+	}
+}
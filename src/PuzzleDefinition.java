@@ -9,6 +9,8 @@ import java.util.function.Function;
  * full GridDefinition.
  */
 public class PuzzleDefinition {
+
+	private static final Helper defLog = Helper.forUnit("PuzzleDefinition");
 	
 	static HashMap<String, Function<PuzzleDefinition, GridDefinition> > knownPuzzles =
 			new HashMap<String, Function<PuzzleDefinition, GridDefinition> > () {
@@ -139,17 +141,26 @@ public class PuzzleDefinition {
 	 * @param keyMap mapping of entry labels to constraint box targets
 	 * @return fully formed grid definition
 	 */
-	// Convert the grid spec into a grid definition
-	// by constructing islands of different types at each grid point
-	// and then finalizing the grid to fill in all possible bridges and
-	// constraints
-	private GridDefinition makeGrid(String[] sgrid, 
+	public GridDefinition makeGrid(String[] sgrid, 
+								   Map<String, ConstraintBox> keyMap ) {
+		GridDefinition fgrid = buildGrid(sgrid, keyMap);
+		fgrid.finalizeGrid();
+		return fgrid;
+	}
+	
+	/**
+	 * Construct the islands of the grid spec without finalizing the grid
+	 * @param sgrid string representation of grid
+	 * @param keyMap mapping of entry labels to constraint box targets
+	 * @return grid definition which still needs finalizeGrid to be called
+	 */
+	public GridDefinition buildGrid(String[] sgrid, 
 								   Map<String, ConstraintBox> keyMap ) {
 		
 		int numRows = sgrid.length;
 		int numCols = sgrid[0].length();
 	
-		System.out.println(String.format("Dims: %d x %d", numRows, numCols));
+		defLog.Log("Dims: %d x %d", numRows, numCols);
 
 		// Set up the islands once.
 		GridDefinition fgrid = new GridDefinition(numRows, numCols);
@@ -169,7 +180,6 @@ public class PuzzleDefinition {
 				fgrid.addElement(i, j,  island);
 			}
 		}
-		fgrid.finalizeGrid();
 		return fgrid;
 	}
 	/**
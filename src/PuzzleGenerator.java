@@ -0,0 +1,327 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generator of random puzzles with a known solution.
+ *
+ * Islands are scattered over a grid of the requested size, with a
+ * constraint box in every row and column. A random spanning set of
+ * non-crossing bridges is then planted and the box targets are taken
+ * from the island scores of that solution, so every generated puzzle has
+ * at least one solution. Bridge scores are adjusted so that no target
+ * repeats a value (see rule 5 in the README).
+ *
+ * Generation is seeded so the same puzzles can be made again, e.g. for
+ * benchmarks.
+ *
+ * Usage: PuzzleGenerator rows cols count [seed]
+ * writes count puzzles to standard output in the puzzle file format.
+ *
+ * @author legge
+ *
+ */
+public class PuzzleGenerator {
+
+	private static final String labels =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+	private static final int maxLayouts = 50;
+	private static final int maxRounds = 20;
+	private static final int maxSteps = 2000;
+
+	private final Random random;
+	private double islandDensity;
+	private double extraBridges;
+
+	/**
+	 * @param seed random seed
+	 */
+	public PuzzleGenerator(long seed) {
+		random = new Random(seed);
+		islandDensity = 0;
+		extraBridges = 0.3;
+	}
+
+	/**
+	 * @param d fraction of grid cells that start as islands, 0 to choose
+	 *          one from the grid size that keeps a few islands per line
+	 */
+	public void setIslandDensity(double d) {
+		islandDensity = d;
+	}
+	/**
+	 * @param p chance of using a bridge that isn't needed to connect the islands
+	 */
+	public void setExtraBridges(double p) {
+		extraBridges = p;
+	}
+
+	/**
+	 * Generate a puzzle
+	 * @param name name of the puzzle
+	 * @param rows number of rows (at most 52)
+	 * @param cols number of columns (at most 52)
+	 * @return the puzzle definition, or null if no puzzle was found
+	 */
+	public PuzzleSpec generate(String name, int rows, int cols) {
+		if ((Math.max(rows, cols) > labels.length()) || (rows * cols < 3)) {
+			return null;
+		}
+		for (int layout = 0; layout < maxLayouts; layout++) {
+			PuzzleSpec p = generate(name, layout(rows, cols));
+			if (p != null) {
+				return p;
+			}
+		}
+		return null;
+	}
+
+	private PuzzleSpec generate(String name, char[][] cells) {
+		int numBoxes = Math.max(cells.length, cells[0].length);
+		for (int round = 0; round < maxRounds; round++) {
+			Map<String, int[]> noTargets = new LinkedHashMap<String, int[]>();
+			for (int k = 0; k < numBoxes; k++) {
+				noTargets.put(labels.substring(k, k+1), new int[] {-1, -1, -1, -1});
+			}
+			PuzzleSpec open = new PuzzleSpec(name, rowStrings(cells), noTargets);
+			GridDefinition grid = open.makeGrid();
+			if (grid.getAllSolidIslands().size() < 2) {
+				return null;
+			}
+			boolean[] used = plantBridges(grid);
+			Connectivity conn = connect(grid, used);
+			if (conn.isConnected()) {
+				int[] score = score(grid, used);
+				if (score == null) {
+					return null;
+				}
+				return new PuzzleSpec(name, rowStrings(cells), targets(grid, cells, score));
+			}
+			// Drop the islands outside the largest component and try again,
+			// the bridges change when islands are removed
+			int[] size = new int[grid.getAllIslands().size()];
+			int largest = 0;
+			for (IslandBase ib : grid.getAllSolidIslands()) {
+				int r = conn.find(ib.index);
+				size[r]++;
+				if (size[r] > size[largest]) {
+					largest = r;
+				}
+			}
+			for (IslandBase ib : grid.getAllSolidIslands()) {
+				if (conn.find(ib.index) != largest) {
+					cells[ib.row][ib.col] = '0';
+				}
+			}
+		}
+		return null;
+	}
+
+	// Scatter islands over the grid with a box in every row and column
+	private char[][] layout(int rows, int cols) {
+		// Long lines of islands rarely avoid repeating a value
+		double density = (islandDensity > 0) ? islandDensity
+				: Math.min(0.4, 4.0 / Math.max(rows, cols));
+		char[][] cells = new char[rows][cols];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++) {
+				cells[i][j] = (random.nextDouble() < density) ? '1' : '0';
+			}
+		}
+		ArrayList<Integer> rowOrder = shuffled(rows);
+		ArrayList<Integer> colOrder = shuffled(cols);
+		for (int k = 0; k < Math.max(rows, cols); k++) {
+			cells[rowOrder.get(k % rows)][colOrder.get(k % cols)] = labels.charAt(k);
+		}
+		return cells;
+	}
+
+	private ArrayList<Integer> shuffled(int n) {
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			order.add(i);
+		}
+		Collections.shuffle(order, random);
+		return order;
+	}
+
+	private static String[] rowStrings(char[][] cells) {
+		String[] rows = new String[cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			rows[i] = new String(cells[i]);
+		}
+		return rows;
+	}
+
+	/**
+	 * Choose the bridges to use: first a random spanning forest,
+	 * then some extra bridges, never letting two used bridges cross.
+	 * @return whether each bridge is used, by bridge index
+	 */
+	private boolean[] plantBridges(GridDefinition grid) {
+		ArrayList<Bridge> bridges = new ArrayList<Bridge>(grid.getAllBridges());
+		Collections.shuffle(bridges, random);
+		boolean[] used = new boolean[bridges.size()];
+		// Null islands already passed over by a used bridge
+		boolean[] crossed = new boolean[grid.getAllIslands().size()];
+		Connectivity conn = new Connectivity(crossed.length);
+		conn.init(grid);
+		for (Bridge b : bridges) {
+			if (!conn.sameComponent(b.fromIsland, b.toIsland) && use(b, crossed, used)) {
+				conn.connect(b);
+			}
+		}
+		for (Bridge b : bridges) {
+			if (!used[b.index] && (random.nextDouble() < extraBridges)) {
+				use(b, crossed, used);
+			}
+		}
+		return used;
+	}
+
+	private boolean use(Bridge b, boolean[] crossed, boolean[] used) {
+		for (IslandBase n : b.iNulls) {
+			if (crossed[n.index]) {
+				return false;
+			}
+		}
+		for (IslandBase n : b.iNulls) {
+			crossed[n.index] = true;
+		}
+		used[b.index] = true;
+		return true;
+	}
+
+	/**
+	 * Choose a score for each used bridge so that no constraint repeats
+	 * an island value. Starting from random scores, the score of a bridge
+	 * at an island with a repeated value is changed while that doesn't
+	 * make more repeats.
+	 * @return score of each bridge by bridge index, null if repeats remain
+	 */
+	private int[] score(GridDefinition grid, boolean[] used) {
+		int[] score = new int[used.length];
+		for (int i = 0; i < used.length; i++) {
+			if (used[i]) {
+				score[i] = 1 + random.nextInt(TrackerBridge.maxWeight);
+			}
+		}
+		boolean[] repeated = new boolean[grid.getAllIslands().size()];
+		int repeats = repeats(grid, score, repeated);
+		for (int step = 0; (step < maxSteps) && (repeats > 0); step++) {
+			ArrayList<Bridge> candidates = new ArrayList<Bridge>();
+			for (Bridge b : grid.getAllBridges()) {
+				if (used[b.index] && (repeated[b.fromIsland.index] || repeated[b.toIsland.index])) {
+					candidates.add(b);
+				}
+			}
+			Bridge b = candidates.get(random.nextInt(candidates.size()));
+			int old = score[b.index];
+			score[b.index] = TrackerBridge.maxWeight + 1 - old;
+			int changed = repeats(grid, score, repeated);
+			if (changed > repeats) {
+				score[b.index] = old;
+				repeats(grid, score, repeated);
+			}
+			else {
+				repeats = changed;
+			}
+		}
+		return (repeats == 0) ? score : null;
+	}
+
+	/**
+	 * Count the island values repeated within a constraint
+	 * @param repeated set for each island whose value is repeated
+	 * @return number of repeats
+	 */
+	private static int repeats(GridDefinition grid, int[] score, boolean[] repeated) {
+		int[] islandScore = islandScores(grid, score);
+		Arrays.fill(repeated, false);
+		int repeats = 0;
+		for (Constraint c : grid.getAllConstraints()) {
+			for (int i = 0; i < c.solidIslands.size(); i++) {
+				IslandBase a = c.solidIslands.get(i);
+				for (int j = i+1; j < c.solidIslands.size(); j++) {
+					IslandBase b = c.solidIslands.get(j);
+					if (islandScore[a.index] == islandScore[b.index]) {
+						repeated[a.index] = true;
+						repeated[b.index] = true;
+						repeats++;
+					}
+				}
+			}
+		}
+		return repeats;
+	}
+
+	private static int[] islandScores(GridDefinition grid, int[] score) {
+		int[] islandScore = new int[grid.getAllIslands().size()];
+		for (Bridge b : grid.getAllBridges()) {
+			islandScore[b.fromIsland.index] += score[b.index];
+			islandScore[b.toIsland.index] += score[b.index];
+		}
+		return islandScore;
+	}
+
+	private static Connectivity connect(GridDefinition grid, boolean[] used) {
+		Connectivity conn = new Connectivity(grid.getAllIslands().size());
+		conn.init(grid);
+		for (Bridge b : grid.getAllBridges()) {
+			if (used[b.index]) {
+				conn.connect(b);
+			}
+		}
+		return conn;
+	}
+
+	// Box targets from the island scores of the planted solution
+	private static Map<String, int[]> targets(GridDefinition grid, char[][] cells, int[] score) {
+		int[] islandScore = islandScores(grid, score);
+		Direction[] order = { Direction.left, Direction.up, Direction.right, Direction.down };
+		Map<String, int[]> targets = new TreeMap<String, int[]>();
+		for (IslandBase ib : grid.getAllIslands()) {
+			if (!ib.isConstraint()) {
+				continue;
+			}
+			ConstraintBox cb = ((IslandConstraint) ib).getConstraintBox();
+			int[] t = new int[4];
+			for (int d = 0; d < 4; d++) {
+				Constraint c = cb.getConstraintForDirection(order[d]);
+				int sum = 0;
+				for (IslandBase s : c.solidIslands) {
+					sum += islandScore[s.index];
+				}
+				t[d] = c.solidIslands.isEmpty() ? -1 : sum;
+			}
+			targets.put(String.valueOf(cells[ib.row][ib.col]), t);
+		}
+		return targets;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: PuzzleGenerator rows cols count [seed]");
+			return;
+		}
+		int rows = Integer.parseInt(args[0]);
+		int cols = Integer.parseInt(args[1]);
+		int count = Integer.parseInt(args[2]);
+		long seed = (args.length > 3) ? Long.parseLong(args[3]) : System.nanoTime();
+
+		PrintStream puzzles = System.out;
+		PuzzleGenerator gen = new PuzzleGenerator(seed);
+		for (int i = 0; i < count; i++) {
+			PuzzleSpec p = gen.generate(String.format("gen-%dx%d-%d-%d", rows, cols, seed, i), rows, cols);
+			if (p != null) {
+				p.write(puzzles);
+			}
+		}
+		puzzles.flush();
+	}
+}
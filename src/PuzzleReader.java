@@ -0,0 +1,197 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader for puzzle files.
+ *
+ * A puzzle file holds any number of puzzles, each in a block:
+ *
+ *     # comment
+ *     puzzle Puzzle2
+ *     1010111A110
+ *     100001B1010
+ *     ...
+ *     A 15 -1 5 17
+ *     B 4 2 5 6
+ *     ...
+ *     end
+ *
+ * The grid rows use the sgrid layout of PuzzleDefinition: 0 is an empty
+ * space, 1 an island and a letter a constraint box. Each box label is
+ * followed by its targets in the order left, up, right, down, with -1
+ * for no target. Blank lines and lines starting with # are ignored.
+ *
+ * Puzzles are read one block at a time, so a file of any size can be
+ * streamed. A block with a mistake is returned as a PuzzleSpec holding
+ * the error, and reading carries on with the next block.
+ *
+ * @author legge
+ *
+ */
+public class PuzzleReader implements Iterator<PuzzleSpec>, Closeable {
+
+	private final BufferedReader in;
+	private final String source;
+	private int lineNumber;
+	// Line read ahead of the current block, if any
+	private String pending;
+	private PuzzleSpec next;
+	private int numRead;
+
+	/**
+	 * @param in puzzle file contents
+	 * @param source name of the file used in error messages
+	 */
+	public PuzzleReader(Reader in, String source) {
+		this.in = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+		this.source = source;
+		lineNumber = 0;
+		pending = null;
+		next = null;
+		numRead = 0;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = readPuzzle();
+		}
+		return next != null;
+	}
+
+	@Override
+	public PuzzleSpec next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		PuzzleSpec p = next;
+		next = null;
+		return p;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	// Next non blank, non comment line, trimmed; null at the end of the file
+	private String nextLine() {
+		if (pending != null) {
+			String l = pending;
+			pending = null;
+			return l;
+		}
+		try {
+			String l;
+			while ((l = in.readLine()) != null) {
+				lineNumber++;
+				l = l.trim();
+				if (!l.isEmpty() && !l.startsWith("#")) {
+					return l;
+				}
+			}
+			return null;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static boolean isStart(String l) {
+		return l.equals("puzzle") || l.startsWith("puzzle ");
+	}
+
+	private PuzzleSpec readPuzzle() {
+		String l = nextLine();
+		if (l == null) {
+			return null;
+		}
+		numRead++;
+		String name = String.format("%s#%d", source, numRead);
+		if (!isStart(l)) {
+			return skipBlock(name, "expected 'puzzle' but found '" + l + "'");
+		}
+		if (l.length() > "puzzle".length()) {
+			name = l.substring("puzzle".length()).trim();
+		}
+
+		ArrayList<String> rows = new ArrayList<String>();
+		Map<String, int[]> targets = new LinkedHashMap<String, int[]>();
+		while ((l = nextLine()) != null) {
+			if (l.equals("end")) {
+				break;
+			}
+			if (isStart(l)) {
+				pending = l;
+				return new PuzzleSpec(name, error("missing 'end'"));
+			}
+			String[] parts = l.split("\\s+");
+			if (parts.length == 1) {
+				if (!targets.isEmpty()) {
+					return skipBlock(name, "grid row after the constraint boxes");
+				}
+				if (!rows.isEmpty() && (l.length() != rows.get(0).length())) {
+					return skipBlock(name, "grid rows are not all the same length");
+				}
+				rows.add(l);
+			}
+			else if (parts.length == 5) {
+				int[] t = new int[4];
+				try {
+					for (int i = 0; i < 4; i++) {
+						t[i] = Integer.parseInt(parts[i+1]);
+					}
+				}
+				catch (NumberFormatException e) {
+					return skipBlock(name, "bad target in '" + l + "'");
+				}
+				targets.put(parts[0], t);
+			}
+			else {
+				return skipBlock(name, "can't read '" + l + "'");
+			}
+		}
+		if (l == null) {
+			return new PuzzleSpec(name, error("missing 'end'"));
+		}
+		if (rows.isEmpty()) {
+			return new PuzzleSpec(name, error("no grid rows"));
+		}
+		for (String row : rows) {
+			for (char c : row.toCharArray()) {
+				if ((c != '0') && (c != '1') && !targets.containsKey(String.valueOf(c))) {
+					return new PuzzleSpec(name, error("no targets for box '" + c + "'"));
+				}
+			}
+		}
+		return new PuzzleSpec(name, rows.toArray(new String[rows.size()]), targets);
+	}
+
+	// Discard the rest of a bad block, stopping at its end or the next start
+	private PuzzleSpec skipBlock(String name, String message) {
+		PuzzleSpec bad = new PuzzleSpec(name, error(message));
+		String l;
+		while ((l = nextLine()) != null) {
+			if (l.equals("end")) {
+				break;
+			}
+			if (isStart(l)) {
+				pending = l;
+				break;
+			}
+		}
+		return bad;
+	}
+
+	private String error(String message) {
+		return String.format("%s line %d: %s", source, lineNumber, message);
+	}
+}
@@ -0,0 +1,107 @@
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The text definition of one puzzle as read from a puzzle file.
+ *
+ * This holds the same layout as the built-in puzzles of PuzzleDefinition:
+ * the sgrid rows and the targets of each constraint box label. It is
+ * cheap to hold and is only turned into a GridDefinition when needed,
+ * so a grid is never built for a puzzle that is not being solved.
+ *
+ * A definition that could not be read keeps the error rather than
+ * stopping the rest of the file from being read.
+ *
+ * @author legge
+ *
+ */
+public class PuzzleSpec {
+
+	private final String name;
+	private final String[] sgrid;
+	// Box label => targets in the order left, up, right, down
+	private final Map<String, int[]> targets;
+	private final String error;
+
+	/**
+	 * @param name name of the puzzle
+	 * @param sgrid grid rows, see PuzzleDefinition
+	 * @param targets constraint box label => left, up, right, down targets
+	 */
+	public PuzzleSpec(String name, String[] sgrid, Map<String, int[]> targets) {
+		this.name = name;
+		this.sgrid = sgrid;
+		this.targets = new LinkedHashMap<String, int[]>(targets);
+		this.error = null;
+	}
+
+	/**
+	 * A puzzle that could not be read
+	 * @param name name of the puzzle
+	 * @param error description of the problem
+	 */
+	public PuzzleSpec(String name, String error) {
+		this.name = name;
+		this.sgrid = new String[0];
+		this.targets = new LinkedHashMap<String, int[]>();
+		this.error = error;
+	}
+
+	public String getName() {
+		return name;
+	}
+	/** @return the read error, null if the puzzle was read */
+	public String getError() {
+		return error;
+	}
+	public boolean isValid() {
+		return error == null;
+	}
+
+	/**
+	 * Build the grid definition for the puzzle.
+	 * Each call builds a new grid with its own constraint boxes.
+	 * @return fully formed grid definition
+	 * @throws IllegalArgumentException if the puzzle could not be read
+	 */
+	public GridDefinition makeGrid() {
+		GridDefinition grid = buildGrid();
+		grid.finalizeGrid();
+		return grid;
+	}
+
+	/**
+	 * Build the islands of the puzzle without finalizing the grid
+	 * @return grid definition which still needs finalizeGrid to be called
+	 * @throws IllegalArgumentException if the puzzle could not be read
+	 */
+	public GridDefinition buildGrid() {
+		if (error != null) {
+			throw new IllegalArgumentException(error);
+		}
+		Map<String, ConstraintBox> keyMap = new TreeMap<String, ConstraintBox>();
+		for (Map.Entry<String, int[]> e : targets.entrySet()) {
+			int[] t = e.getValue();
+			keyMap.put(e.getKey(), new ConstraintBox(t[0], t[1], t[2], t[3]));
+		}
+		return new PuzzleDefinition().buildGrid(sgrid, keyMap);
+	}
+
+	/**
+	 * Write the puzzle in the puzzle file format
+	 * @param out stream to write to
+	 */
+	public void write(PrintStream out) {
+		out.println("puzzle " + name);
+		for (String row : sgrid) {
+			out.println(row);
+		}
+		for (Map.Entry<String, int[]> e : targets.entrySet()) {
+			int[] t = e.getValue();
+			out.println(String.format("%s %d %d %d %d", e.getKey(), t[0], t[1], t[2], t[3]));
+		}
+		out.println("end");
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * When a search restarts: the number of search nodes each run may visit
+ * before the search goes back to the root and starts again.
+ *
+ * Restarting with randomised tie-breaking (and, for the learning
+ * heuristics, what they learned in earlier runs) lets the search leave a
+ * bad early choice that a single run would spend most of its time under.
+ * The cutoffs keep growing, so the search stays complete.
+ *
+ * @author legge
+ *
+ */
+public class RestartStrategy {
+
+	private final long unit;
+	private final double factor;
+
+	private RestartStrategy(long unit, double factor) {
+		this.unit = Math.max(1, unit);
+		this.factor = factor;
+	}
+
+	/**
+	 * Cutoffs of unit times the Luby sequence 1, 1, 2, 1, 1, 2, 4, ...
+	 * @param unit nodes in the shortest run
+	 * @return the strategy
+	 */
+	public static RestartStrategy luby(long unit) {
+		return new RestartStrategy(unit, 0);
+	}
+
+	/**
+	 * Cutoffs of first, first * factor, first * factor^2, ...
+	 * @param first nodes in the first run
+	 * @param factor growth of each run over the last, more than 1
+	 * @return the strategy
+	 */
+	public static RestartStrategy geometric(long first, double factor) {
+		if (factor <= 1) {
+			throw new IllegalArgumentException("Restart factor must be more than 1");
+		}
+		return new RestartStrategy(first, factor);
+	}
+
+	/**
+	 * @param run number of the run, from 0
+	 * @return nodes the run may visit before restarting
+	 */
+	public long cutoff(int run) {
+		if (factor == 0) {
+			return unit * lubyTerm(run);
+		}
+		return (long) Math.min(Long.MAX_VALUE / 2, unit * Math.pow(factor, run));
+	}
+
+	/**
+	 * @param i position in the sequence, from 0
+	 * @return the ith term of the Luby sequence
+	 */
+	static long lubyTerm(int i) {
+		int size = 1;
+		int seq = 0;
+		while (size < i + 1) {
+			seq++;
+			size = 2 * size + 1;
+		}
+		while (size - 1 != i) {
+			size = (size - 1) / 2;
+			seq--;
+			i = i % size;
+		}
+		return 1L << seq;
+	}
+}
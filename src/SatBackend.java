@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+
+/**
+ * Solves a grid with a SAT solver instead of the solver's own search.
+ *
+ * The grid is encoded as CNF (see CnfEncoder) and handed to a CdclSolver.
+ * A model that leaves the islands unconnected gets cut clauses added and
+ * the SAT solver runs again, until a model connects every island or there
+ * are no models left. To find more solutions, each solution found can be
+ * excluded by a clause before looking for the next.
+ *
+ * @author legge
+ *
+ */
+public class SatBackend {
+
+	private final CnfEncoder encoder;
+	private final CdclSolver sat;
+	private int[] scores;
+	private long numCuts;
+	private long numModels;
+
+	/**
+	 * @param grid finalized grid to solve
+	 */
+	public SatBackend(GridDefinition grid) {
+		encoder = new CnfEncoder(grid);
+		Cnf cnf = encoder.getCnf();
+		sat = new CdclSolver(cnf.getNumVars());
+		for (int[] clause : cnf.getClauses()) {
+			sat.addClause(clause);
+		}
+		scores = null;
+		numCuts = 0;
+		numModels = 0;
+	}
+
+	/**
+	 * @param b budget shared with the solve, SAT decisions count as nodes
+	 */
+	public void setBudget(SolveBudget b) {
+		sat.setBudget(b);
+	}
+
+	/**
+	 * Find a solution not excluded so far
+	 * @return SOLVED if one was found, UNSOLVABLE if there are no more,
+	 *         or the limit of the budget that stopped the search
+	 */
+	public SolveResult next() {
+		scores = null;
+		while (true) {
+			SolveResult result = sat.solve();
+			if (result != SolveResult.SOLVED) {
+				return result;
+			}
+			numModels++;
+			int[] s = encoder.scores(sat);
+			ArrayList<int[]> cuts = encoder.cuts(s);
+			if (cuts.isEmpty()) {
+				scores = s;
+				return SolveResult.SOLVED;
+			}
+			for (int[] cut : cuts) {
+				sat.addClause(cut);
+				numCuts++;
+			}
+		}
+	}
+
+	/**
+	 * @param b bridge
+	 * @return score of the bridge in the solution last found
+	 */
+	public int getScore(Bridge b) {
+		return scores[b.index];
+	}
+
+	/**
+	 * Exclude the solution last found from later searches
+	 */
+	public void exclude() {
+		sat.addClause(encoder.exclude(scores));
+	}
+
+	/** @return the SAT solver, for its statistics */
+	public CdclSolver getSat() {
+		return sat;
+	}
+	/** @return number of cut clauses added for connectivity */
+	public long getNumCuts() {
+		return numCuts;
+	}
+	/** @return number of models found, connected or not */
+	public long getNumModels() {
+		return numModels;
+	}
+}
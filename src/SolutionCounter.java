@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Collects the distinct solutions found by a counting search.
+ *
+ * A counting search carries on after the first solution, until the whole
+ * search tree is explored or the limit is reached; a limit of 2 is enough
+ * to tell whether a puzzle has a unique solution. One counter is shared
+ * by all the branches of a parallel search, so the limit applies across
+ * threads.
+ *
+ * Each solution is held as the score of every bridge, one digit each, in
+ * the grid's bridge order.
+ *
+ * @author legge
+ *
+ */
+public class SolutionCounter {
+
+	private final int limit;
+	private final LinkedHashSet<String> solutions;
+	private volatile boolean done;
+	private volatile boolean complete;
+
+	/**
+	 * @param limit number of solutions at which to stop searching,
+	 *              0 to count them all
+	 */
+	public SolutionCounter(int limit) {
+		this.limit = limit;
+		solutions = new LinkedHashSet<String>();
+		done = false;
+		complete = true;
+	}
+
+	/**
+	 * Record a solution
+	 * @param state a solved state
+	 * @return true if the limit has been reached and searching can stop
+	 */
+	public boolean add(SolverState state) {
+		String s = state.solutionString();
+		synchronized (solutions) {
+			solutions.add(s);
+			if ((limit > 0) && (solutions.size() >= limit)) {
+				done = true;
+			}
+		}
+		return done;
+	}
+
+	/** @return true once the limit has been reached */
+	public boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Note that part of the search tree was skipped, so there may be
+	 * more solutions than were counted
+	 */
+	public void markIncomplete() {
+		complete = false;
+	}
+
+	/** @return true if the count covers the whole search or reached the limit */
+	public boolean isComplete() {
+		return complete || done;
+	}
+
+	/** @return number of distinct solutions found */
+	public int getCount() {
+		synchronized (solutions) {
+			return solutions.size();
+		}
+	}
+
+	/** @return true if the whole search found exactly one solution */
+	public boolean isUnique() {
+		return (getCount() == 1) && complete && !done;
+	}
+
+	/** @return the distinct solutions in the order they were found */
+	public ArrayList<String> getSolutions() {
+		synchronized (solutions) {
+			return new ArrayList<String>(solutions);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the resources a solve may use: wall clock time, the number of
+ * search nodes and heap memory, plus a cancellation token.
+ *
+ * A limit of 0 means no limit. The budget is started when the solve
+ * starts, and once any limit is exceeded it stays exhausted, recording
+ * which limit it was. One budget is shared by all the branches of a
+ * parallel search, so the limits apply to the solve as a whole.
+ *
+ * @author legge
+ *
+ */
+public class SolveBudget {
+
+	// Heap use is only measured on every this many checks
+	private static final int memoryCheckInterval = 1024;
+
+	private long timeLimitMillis;
+	private long nodeLimit;
+	private long memoryLimit;
+	private CancellationToken token;
+
+	private long deadline;
+	private final AtomicLong nodes;
+	private int checks;
+	private volatile SolveResult stopReason;
+
+	/**
+	 * Create a budget with no limits
+	 */
+	public SolveBudget() {
+		timeLimitMillis = 0;
+		nodeLimit = 0;
+		memoryLimit = 0;
+		token = new CancellationToken();
+		nodes = new AtomicLong();
+		start();
+	}
+
+	/**
+	 * @param millis wall clock time the solve may take, 0 for no limit
+	 */
+	public void setTimeLimit(long millis) {
+		timeLimitMillis = Math.max(0, millis);
+	}
+	/**
+	 * @param n number of search nodes the solve may visit, 0 for no limit
+	 */
+	public void setNodeLimit(long n) {
+		nodeLimit = Math.max(0, n);
+	}
+	/**
+	 * @param bytes heap in use above which the solve stops, 0 for no limit
+	 */
+	public void setMemoryLimit(long bytes) {
+		memoryLimit = Math.max(0, bytes);
+	}
+	/**
+	 * @param t token through which the solve can be cancelled
+	 */
+	public void setToken(CancellationToken t) {
+		token = t;
+	}
+	/** @return token through which the solve can be cancelled */
+	public CancellationToken getToken() {
+		return token;
+	}
+
+	/**
+	 * A budget for one of several solves run side by side: the same
+	 * limits, counted separately, and a token of its own that is also
+	 * cancelled when this budget's token is
+	 * @return the new budget
+	 */
+	public SolveBudget child() {
+		SolveBudget b = new SolveBudget();
+		b.setTimeLimit(timeLimitMillis);
+		b.setNodeLimit(nodeLimit);
+		b.setMemoryLimit(memoryLimit);
+		b.setToken(new CancellationToken(token));
+		return b;
+	}
+
+	/**
+	 * Start the clock and the node count, called when a solve starts
+	 */
+	public void start() {
+		deadline = (timeLimitMillis > 0) ? System.nanoTime() + timeLimitMillis * 1000000L : 0;
+		nodes.set(0);
+		checks = 0;
+		stopReason = null;
+	}
+
+	/**
+	 * Count a search node
+	 * @return false if the budget is exhausted and the search should stop
+	 */
+	public boolean countNode() {
+		long n = nodes.incrementAndGet();
+		if ((nodeLimit > 0) && (n > nodeLimit)) {
+			stop(SolveResult.NODE_LIMIT);
+		}
+		return !isExhausted();
+	}
+
+	/**
+	 * @return true if a limit has been exceeded or the solve was cancelled
+	 */
+	public boolean isExhausted() {
+		if (stopReason != null) {
+			return true;
+		}
+		if (token.isCancelled()) {
+			stop(SolveResult.CANCELLED);
+		}
+		else if ((deadline != 0) && (System.nanoTime() - deadline > 0)) {
+			stop(SolveResult.TIME_LIMIT);
+		}
+		else if ((memoryLimit > 0) && (++checks % memoryCheckInterval == 0)) {
+			Runtime rt = Runtime.getRuntime();
+			if (rt.totalMemory() - rt.freeMemory() > memoryLimit) {
+				stop(SolveResult.MEMORY_LIMIT);
+			}
+		}
+		return (stopReason != null);
+	}
+
+	private synchronized void stop(SolveResult reason) {
+		if (stopReason == null) {
+			stopReason = reason;
+		}
+	}
+
+	/** @return the limit that stopped the solve, null if none has */
+	public SolveResult getStopReason() {
+		return stopReason;
+	}
+
+	/** @return number of search nodes counted since the start */
+	public long getNumNodes() {
+		return nodes.get();
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ * The outcome of a solve.
+ *
+ * A solve that stops because its budget ran out says which limit was hit,
+ * so a puzzle with no solution can be told apart from one the solver
+ * didn't finish.
+ *
+ * @author legge
+ *
+ */
+public enum SolveResult {
+	SOLVED("solved"),
+	UNSOLVABLE("unsolved"),
+	TIME_LIMIT("timeout"),
+	NODE_LIMIT("node limit"),
+	MEMORY_LIMIT("memory limit"),
+	CANCELLED("cancelled");
+
+	private final String label;
+
+	private SolveResult(String label) {
+		this.label = label;
+	}
+
+	/** @return short lower case description */
+	public String getLabel() {
+		return label;
+	}
+
+	/** @return true if the solve stopped before the search was finished */
+	public boolean isBudgetExhausted() {
+		return (this != SOLVED) && (this != UNSOLVABLE);
+	}
+}
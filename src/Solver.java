@@ -1,53 +1,467 @@
 
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.TreeSet;
-import java.util.stream.IntStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Solver {
 	private Model model;
 	private GridDefinition grid;
+	private SolverState state;
 	private Action action;
 	private SolverStatus status;
 	private InputSignal signals;
-	private Helper allLog;
+	private static final Helper allLog = Helper.forUnit("Solver");
 	 
 	private int gCounter;
-	private int maxLoops;
 	private int updateInterval;
 	
+	// Limits on the search, shared by all branches of a parallel search
+	private SolveBudget budget;
+	private SolveResult result;
+	
+	// States proven to have no solution, shared by all branches
+	// of a parallel search. Null when disabled.
+	private TranspositionTable table;
+	private int tableSize;
+	
+	// Conflict learning: the decision made at each level below the root
+	// of this solver's search, and the levels whose decisions explain the
+	// last failure of tryAllocatingConstraints, as a mask of levels with
+	// bit 63 standing for every level from 63 down (see TrackerData).
+	// A failure explained without a level's decision backjumps over that level.
+	private ArrayList<Decision> decisions;
+	private long conflict;
+	private boolean learning;
+	private NogoodStore nogoods;
+	private static final int nogoodCapacity = 1000;
+	
+	// Solve with a SAT solver instead of searching (see SatBackend)
+	private boolean satBackend;
+	
+	// Chooses the constraint to branch on, shared by all branches
+	private BranchHeuristic heuristic;
+	// Breaks ties between equally good constraints at random,
+	// null to take the first
+	private Random random;
+	
+	// Restarts of a sequential search, null for a single run. The current
+	// run started at node runStart and may visit runLimit nodes (0 for no limit).
+	private RestartStrategy restarts;
+	private long runStart;
+	private long runLimit;
+	private int numRestarts;
+	
 	private ArrayList<Integer> checkpoints;
 	private ArrayList<Integer> replayCheckpoints;
 	
+	// Parallel search: the top forkDepth levels of the branching tree
+	// are run as fork-join tasks, each on its own copy of the solver state.
+	// A parallelism of 1 keeps the search on the calling thread.
+	private int parallelism;
+	private int forkDepth;
+	// Shared by all branches of a parallel search, holds the first
+	// branch solver to find a valid solution.
+	private AtomicReference<Solver> winner;
+	// Set while counting solutions rather than stopping at the first,
+	// shared by all branches of a parallel search.
+	private SolutionCounter counter;
+	// Records the search for looking at afterwards, may be null,
+	// shared by all branches of a parallel search.
+	private SolverEvents events;
+	// Counts the work of the search, may be null, shared likewise
+	private SolverMetrics metrics;
+	
 	public Solver(Model modelIn, InputSignal insignals) {
+		this(modelIn.getState());
 		model = modelIn;
 		signals = insignals;
-		status = new SolverStatus();
+	}
+	
+	/**
+	 * Create a solver for a grid without a model or UI attached
+	 * @param gridIn the finalized grid definition to solve
+	 */
+	public Solver(GridDefinition gridIn) {
+		this(new SolverState(gridIn));
+	}
+	
+	/**
+	 * Create a solver that works on the given solver state.
+	 * The grid of the state is shared and never modified.
+	 * @param stateIn the solver state to solve into
+	 */
+	public Solver(SolverState stateIn) {
+		model = null;
+		signals = null;
+		state = stateIn;
+		status = state.getStatus();
 		action = new Action();
-		allLog = new Helper("Solver");
 		checkpoints = new ArrayList<Integer> ();
-		grid = model.grid;
+		grid = state.getGrid();
 		gCounter = 0;
-		maxLoops = 1000;
 		updateInterval = 1000;
+		budget = new SolveBudget();
+		result = null;
+		table = null;
+		tableSize = 0;
+		decisions = new ArrayList<Decision>();
+		conflict = 0;
+		learning = true;
+		nogoods = null;
+		satBackend = false;
+		heuristic = new FewestCandidatesHeuristic();
+		random = null;
+		restarts = null;
+		runLimit = 0;
+		numRestarts = 0;
+		parallelism = 1;
+		forkDepth = 2;
+		winner = null;
+		counter = null;
+		events = null;
+		metrics = null;
+	}
+	
+	/**
+	 * @return the solver state this solver works on
+	 */
+	public SolverState getState() {
+		return state;
+	}
+	
+	/**
+	 * Run the top levels of the search in parallel.
+	 * @param threads number of worker threads (1 for a sequential search)
+	 * @param depth number of branching levels to split into separate tasks
+	 */
+	public void setParallelism(int threads, int depth) {
+		parallelism = Math.max(1, threads);
+		forkDepth = Math.max(1, depth);
 	}
 
+	/**
+	 * @param b limits on the time, search nodes and memory of later solves
+	 */
+	public void setBudget(SolveBudget b) {
+		budget = b;
+	}
+	
+	/**
+	 * Off by default: on the example and generated puzzles the search
+	 * never reaches a state already proven dead, so the table only costs
+	 * its allocation and lookups.
+	 * @param size number of dead states to remember during a solve, 0 to
+	 *             search without remembering them
+	 */
+	public void setTranspositionTableSize(int size) {
+		tableSize = Math.max(0, size);
+	}
+	
+	/**
+	 * On by default. Failures are explained by the reasons kept for the
+	 * tracker values as they propagate (see TrackerData), which costs
+	 * less than the search it saves on all but the easiest puzzles.
+	 * @param on true to learn nogoods and backjump from conflicts
+	 */
+	public void setLearning(boolean on) {
+		learning = on;
+	}
+	
+	/**
+	 * @param h chooses the constraint to branch on in later solves
+	 *          (see BranchHeuristic.forName)
+	 */
+	public void setBranchHeuristic(BranchHeuristic h) {
+		heuristic = h;
+	}
+	
+	/**
+	 * @param seed seed for breaking ties between constraints the branching
+	 *             heuristic finds equally good at random
+	 */
+	public void setRandomSeed(long seed) {
+		random = new Random(seed);
+	}
+	
+	/**
+	 * Go back to the root and search again each time a run has visited
+	 * its cutoff of nodes. Only a sequential search restarts.
+	 * @param r when to restart, null for a single run
+	 */
+	public void setRestarts(RestartStrategy r) {
+		restarts = r;
+	}
+	
+	/**
+	 * Record the decisions, conflicts, propagations, checkpoints and
+	 * reverts of later solves
+	 * @param e recorder, may be shared with other solvers, null for none
+	 */
+	public void setEvents(SolverEvents e) {
+		events = e;
+		action.setEvents(e);
+	}
+	
+	/**
+	 * Count the work of later solves
+	 * @param m metrics, may be shared with other solvers, null for none
+	 */
+	public void setMetrics(SolverMetrics m) {
+		metrics = m;
+		state.getPropagator().setMetrics(m);
+	}
+	
+	/** @return number of restarts in the last solve */
+	public int getNumRestarts() {
+		return numRestarts;
+	}
+	
+	/**
+	 * Used by the branching heuristics on finding another constraint as
+	 * good as the best so far. Choosing each tie with chance 1/ties picks
+	 * evenly among all of them.
+	 * @param ties number of equally good constraints found so far
+	 * @return true to take the latest one
+	 */
+	boolean preferTie(int ties) {
+		return (random != null) && (random.nextInt(ties) == 0);
+	}
+	
+	/**
+	 * Solve by encoding the grid as CNF for a SAT solver instead of searching.
+	 * Parallelism, learning and the transposition table don't apply, and
+	 * there are no search steps to replay.
+	 * @param on true to use the SAT solver
+	 */
+	public void setSatBackend(boolean on) {
+		satBackend = on;
+	}
+	
+	/**
+	 * @return the nogoods learned by the last sequential solve, null if none were
+	 */
+	public NogoodStore getNogoods() {
+		return nogoods;
+	}
+	
+	/**
+	 * @return the dead states remembered by the last solve, null if none were
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+	
+	/**
+	 * @return the outcome of the last solve or count, null before the first
+	 */
+	public SolveResult getResult() {
+		return result;
+	}
+	
 	public boolean solve() {
+		counter = null;
+		return search();
+	}
+	
+	/**
+	 * Solve within a budget
+	 * @param b limits on the time, search nodes and memory of the solve
+	 * @return whether the puzzle was solved, has no solution, or which
+	 *         limit stopped the search first
+	 */
+	public SolveResult solve(SolveBudget b) {
+		setBudget(b);
+		solve();
+		return result;
+	}
+	
+	/**
+	 * Search on after the first solution, counting the distinct solutions
+	 * until the search is exhausted or the limit is reached. With a limit
+	 * of 2 this tells whether the puzzle's solution is unique.
+	 * The solver state is only left at a solution if the limit was reached.
+	 * @param limit number of solutions at which to stop, 0 for no limit
+	 * @return the count and the solutions found
+	 */
+	public SolutionCounter countSolutions(int limit) {
+		counter = new SolutionCounter(limit);
+		search();
+		return counter;
+	}
+	
+	private boolean search() {
+		long start = System.nanoTime();
+		budget.start();
+		winner = null;
+		table = (tableSize > 0) ? new TranspositionTable(tableSize) : null;
+		heuristic.start(grid);
 		reset();		
 		if (!isFullyConnected()) {
-			allLog.Error("Not fully connected");
+			allLog.Log("Not fully connected");
+			result = SolveResult.UNSOLVABLE;
 			return false;
 		}
-		boolean solved = tryAllocatingConstraints();
-		allLog.Log(true, "Solved = " + solved);
+		long searchStart = System.nanoTime();
+		if (metrics != null) {
+			metrics.solve();
+			metrics.time("setup", searchStart - start);
+		}
+		boolean solved = satBackend ? solveSat()
+				: (parallelism > 1) ? solveParallel() : searchWithRestarts();
+		if (metrics != null) {
+			metrics.time(satBackend ? "sat" : "search", System.nanoTime() - searchStart);
+		}
+		if (counter != null) {
+			solved = (counter.getCount() > 0);
+			if (!counter.isDone() && budget.isExhausted()) {
+				counter.markIncomplete();
+			}
+		}
+		if (solved) {
+			result = SolveResult.SOLVED;
+		}
+		else {
+			result = budget.isExhausted() ? budget.getStopReason() : SolveResult.UNSOLVABLE;
+		}
+		allLog.Log("Solved = %s", solved);
 		updateUI();
 		startReplay();
 		return solved;
 	}
 	
+	/**
+	 * Search the branches below the current state on a fork-join pool.
+	 * The tracker state of the first branch to find a solution is copied
+	 * back to this solver's state.
+	 * @return true if a solution was found, false otherwise
+	 */
+	private boolean solveParallel() {
+		winner = new AtomicReference<Solver>();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new BranchTask(branchSolver(), 0));
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		Solver found = winner.get();
+		if (found == null) {
+			return false;
+		}
+		state.copyFrom(found.state);
+		return true;
+	}
+	
+	/**
+	 * Create a solver over a private copy of the solver state, sharing
+	 * the same grid definition.
+	 * @return the branch solver
+	 */
+	private Solver branchSolver() {
+		Solver s = new Solver(new SolverState(state));
+		s.budget = budget;
+		s.table = table;
+		s.learning = learning;
+		s.heuristic = heuristic;
+		s.random = random;
+		s.state.getPropagator().setBudget(budget);
+		s.winner = winner;
+		s.counter = counter;
+		s.setEvents(events);
+		s.setMetrics(metrics);
+		return s;
+	}
+	
+	/**
+	 * @return true if another branch of a parallel search has already found
+	 *         a solution, enough solutions have been counted or the budget
+	 *         is exhausted
+	 */
+	private boolean isCancelled() {
+		return ((winner != null) && (winner.get() != null))
+				|| ((counter != null) && counter.isDone())
+				|| isRestartDue()
+				|| budget.isExhausted();
+	}
+	
+	private boolean isRestartDue() {
+		return (runLimit > 0) && (budget.getNumNodes() - runStart > runLimit);
+	}
+	
+	/**
+	 * A node in the top levels of a parallel search. Each candidate
+	 * for the chosen constraint becomes a child task with its own copy
+	 * of the trackers; below forkDepth the branch is searched sequentially.
+	 */
+	private class BranchTask extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 1L;
+		private final Solver solver;
+		private final int depth;
+		
+		BranchTask(Solver solver, int depth) {
+			this.solver = solver;
+			this.depth = depth;
+		}
+		
+		@Override
+		protected Boolean compute() {
+			if (solver.isCancelled()) {
+				return false;
+			}
+			if (depth >= forkDepth) {
+				return found(solver.searchFromHere());
+			}
+			ArrayList<Solver> branches = solver.expandBranches();
+			if (branches == null) {
+				return found(solver.acceptLeaf());
+			}
+			ArrayList<BranchTask> tasks = new ArrayList<BranchTask> ();
+			for (Solver s : branches) {
+				tasks.add(new BranchTask(s, depth+1));
+			}
+			for (BranchTask t : invokeAll(tasks)) {
+				if (t.join()) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private boolean found(boolean solved) {
+			if (solved) {
+				winner.compareAndSet(null, solver);
+			}
+			return solved;
+		}
+	}
+	
+	/**
+	 * Create a branch solver for each valid candidate of the next constraint.
+	 * @return the branch solvers, or null if there are no constraints left to branch on
+	 */
+	private ArrayList<Solver> expandBranches() {
+		action.saveAllStates(state);
+		int thisCheckpoint = action.getHistoryState();
+		ConstraintBridgeSolutions cs = nextBranch();
+		if (cs == null) {
+			return null;
+		}
+		ArrayList<Solver> branches = new ArrayList<Solver> ();
+		double before = heuristic.measure(state);
+		while (cs.updateWithNextSolution()) {
+			heuristic.tried(cs.constraint, state, before, !status.isValid());
+			if (status.isValid()) {
+				branches.add(branchSolver());
+			}
+			action.revertState(state, thisCheckpoint);
+		}
+		return branches;
+	}
+	
 	void nextStep() {
 		String next = signals.getNext();
 		updateUI();
@@ -71,11 +485,13 @@ public class Solver {
 	}
 	
 	private void updateUI() {
-		model.changeSomething();
+		if (model != null) {
+			model.changeSomething();
+		}
 	}
 	public void startReplay() {
 		replayCheckpoints = checkpoints;
-		action.saveAllStates(grid);
+		action.saveAllStates(state);
 		int thisCheckpoint = action.getHistoryState();
 		checkpoints.add(thisCheckpoint);
 	}
@@ -83,29 +499,21 @@ public class Solver {
 		// A pseudo circular list
 		Integer ind = replayCheckpoints.remove(0);
 		replayCheckpoints.add(ind);
-		action.replayState(grid, ind);
+		action.replayState(state, ind);
 		updateUI();
 	}
 	public void backReplayStep() {
 		// A pseudo circular list
 		Integer ind = replayCheckpoints.remove(replayCheckpoints.size()-1);
 		replayCheckpoints.add(0, ind);
-		action.replayState(grid, ind);
+		action.replayState(state, ind);
 		updateUI();
 	}
 
 	private void reset() {
 		// Make sure all trackers are initialized
-		
-		grid.getAllIslands().stream().forEach(a -> a.tracker.init(a, status));
-		grid.getAllConstraints().stream().forEach(a -> a.tracker.init(a, status));
-		grid.getAllBridges().stream().forEach(a -> a.tracker.init(a, status));
-		
-		// Set up unique group ids for each island
-		int n = 0;
-		for (IslandBase i : grid.getAllSolidIslands()) {
-			i.tracker.groupId = n++;
-		}
+		state.init();
+		state.getPropagator().setBudget(budget);
 
 		// An initial update ensures all info is propagated
 		/*
@@ -113,29 +521,107 @@ public class Solver {
 		grid.getAllSolidIslands().stream().forEach(ib -> action.updateIsland(ib));
 		grid.getAllConstraints().stream().forEach(c -> action.updateConstraint(c));
 		*/
-		status.init(grid);
-		
 	}
 	
+	/**
+	 * Check that every solid island can still be reached from the first
+	 * one over bridges that may have a non-zero score.
+	 * @return true if the grid can still be connected
+	 */
 	private boolean isFullyConnected() {
-		int expectedCount = (int) grid.getAllSolidIslands().size();
-		
-		// Finally check every node is connected
-		TreeSet<IslandBase> visited = new TreeSet<IslandBase>();
-		followBridge(grid.getAllSolidIslands().get(0), visited);
-		return (visited.size() == expectedCount);
+		if (state.getConnectivity().isConnected()) {
+			return true;
+		}
+		List<IslandBase> islands = grid.getAllIslands();
+		boolean[] visited = new boolean[islands.size()];
+		int[] stack = new int[islands.size()];
+		int top = 0;
+		int first = grid.getAllSolidIslands().get(0).index;
+		visited[first] = true;
+		stack[top++] = first;
+		int count = 1;
+		while (top > 0) {
+			IslandBase ib = islands.get(stack[--top]);
+			for (Bridge b : ib.bridges) {
+				IslandBase other = b.otherEndIsland(ib);
+				if (!visited[other.index] && state.tracker(b).nonZeroScoreAvailable()) {
+					visited[other.index] = true;
+					stack[top++] = other.index;
+					count++;
+				}
+			}
+		}
+		return (count == grid.getAllSolidIslands().size());
+	}
+	
+
+	
+	/**
+	 * Take the solutions found by the SAT solver until one is accepted,
+	 * excluding each one before looking for the next. The bridge scores of
+	 * each are set in the solver state, so it is checked just as a leaf of
+	 * the search is and counted in the same way.
+	 * @return true if the search can stop, see tryAllocatingConstraints
+	 */
+	private boolean solveSat() {
+		SatBackend sat = new SatBackend(grid);
+		sat.setBudget(budget);
+		action.saveAllStates(state);
+		int root = action.getHistoryState();
+		while (sat.next() == SolveResult.SOLVED) {
+			for (Bridge b : grid.getAllBridges()) {
+				TrackerBridge tb = state.tracker(b);
+				action.changeMinimum(tb, sat.getScore(b));
+				action.changeMaximum(tb, sat.getScore(b));
+			}
+			if (acceptLeaf()) {
+				return true;
+			}
+			action.revertState(state, root);
+			sat.exclude();
+		}
+		return false;
 	}
 	
-	private void followBridge(IslandBase ib, TreeSet<IslandBase> visited) {
-		if (visited.contains(ib)) {
-			return;
+	/**
+	 * Search in runs of growing length, going back to the current state
+	 * after each run that reaches its cutoff.
+	 * @return true if the search can stop, see tryAllocatingConstraints
+	 */
+	private boolean searchWithRestarts() {
+		numRestarts = 0;
+		if (restarts == null) {
+			return searchFromHere();
+		}
+		action.saveAllStates(state);
+		int root = action.getHistoryState();
+		for (int run = 0; ; run++) {
+			runStart = budget.getNumNodes();
+			runLimit = restarts.cutoff(run);
+			boolean stop = searchFromHere();
+			boolean restart = !stop && isRestartDue() && !budget.isExhausted();
+			runLimit = 0;
+			if (!restart) {
+				return stop;
+			}
+			action.revertState(state, root);
+			numRestarts++;
 		}
-		visited.add(ib);
-		ib.bridges.stream().filter(b -> b.tracker.nonZeroScoreAvailable())
-			.forEach(b -> followBridge(b.otherEndIsland(ib), visited));
 	}
 	
-
+	/**
+	 * Search the tree below the current state, which becomes the root
+	 * for conflict learning.
+	 * @return true if the search can stop, see tryAllocatingConstraints
+	 */
+	private boolean searchFromHere() {
+		decisions.clear();
+		nogoods = learning ? new NogoodStore(nogoodCapacity, grid.getAllBridges().size()) : null;
+		state.setExplaining(learning);
+		boolean stop = tryAllocatingConstraints();
+		state.setExplaining(false);
+		return stop;
+	}
 	
 	private boolean tryAllocatingConstraints() {
 		gCounter++;
@@ -145,148 +631,477 @@ public class Solver {
 		if (gCounter % updateInterval == 0){
 			updateUI();
 		}
-		if (--maxLoops == 0) {
+		int level = decisions.size();
+		// Unless a smaller explanation is found, a failure here
+		// depends on every decision above
+		conflict = levelsBelow(level);
+		if (!budget.countNode() || isCancelled()) {
 			return false;
 		}
-		action.saveAllStates(grid);
+		if (metrics != null) {
+			metrics.node(level);
+		}
+		// Reached before by another route and found to have no solution
+		long hash = state.getHash();
+		if ((table != null) && table.isDead(hash)) {
+			return false;
+		}
+		long nodes = budget.getNumNodes();
+		int found = (counter != null) ? counter.getCount() : 0;
+		action.saveAllStates(state);
 		int thisCheckpoint = action.getHistoryState();
 		checkpoints.add(thisCheckpoint);
-		ArrayList<Constraint> unsolved = new ArrayList<Constraint>();
-		grid.getAllConstraints().stream()
-			.filter(cn -> !cn.tracker.isSolved())
-			.filter(cn -> cn.hasTarget())
-			.forEach(cn -> unsolved.add(cn));
-		if (unsolved.size() == 0) {
-			return (status.isValid() && status.complete(grid)
-					&& isFullyConnected()); 
-		}
-		ArrayList<ConstraintBridgeSolutions> cbs = new ArrayList<ConstraintBridgeSolutions> ();
-		for (Constraint c : unsolved) {
-			ConstraintBridgeSolutions cs = new ConstraintBridgeSolutions(c, 10000);
-			cbs.add(cs);
-		}
-		cbs.sort(solutionsComparator);
-		ConstraintBridgeSolutions cs = cbs.get(0);
+		ConstraintBridgeSolutions cs = nextBranch();
+		if (cs == null) {
+			checkpoints.remove(checkpoints.size()-1);
+			return acceptLeaf();
+		}
+		long tried = 0;
+		// Levels the failures of the candidates so far depend on, other
+		// than this one, starting with those that shaped the candidates
+		long why = (nogoods != null) ? candidateReasons(cs.constraint) : 0;
+		boolean jump = false;
+		double before = heuristic.measure(state);
+		state.setCause(levelBit(level));
 		while (cs.updateWithNextSolution()){
-			if (status.isValid()){
-				if (tryAllocatingConstraints()) {
+			tried++;
+			heuristic.tried(cs.constraint, state, before, !status.isValid());
+			// Levels the failure of this candidate depends on
+			long failure;
+			Bridge[] violated = null;
+			if (status.isValid() && ((nogoods == null)
+					|| ((violated = nogoods.findViolated(state, cs.bridges)) == null))) {
+				if (events != null) {
+					events.record(SolverEvents.DECISION, cs.constraint.index, level);
+				}
+				decisions.add(cs.decision());
+				boolean stop = tryAllocatingConstraints();
+				decisions.remove(level);
+				if (stop) {
 					return true;
 				}
+				state.setCause(levelBit(level));
+				failure = conflict;
+			}
+			else {
+				if (events != null) {
+					events.record(SolverEvents.CONFLICT, cs.constraint.index, level);
+				}
+				failure = failureReasons(violated, level);
 			}
-			action.revertState(grid, status, thisCheckpoint);
+			action.revertState(state, thisCheckpoint);
+			if (metrics != null) {
+				metrics.backtrack(level);
+			}
+			if ((failure & levelBit(level)) == 0) {
+				// The failure doesn't depend on this decision,
+				// so no other candidate here can avoid it
+				why = failure;
+				jump = true;
+				break;
+			}
+			why |= withoutLevel(failure, level);
+			if (isCancelled()) {
+				break;
+			}
+		}
+		if (metrics != null) {
+			metrics.candidates(tried);
 		}
-		action.revertState(grid, status, thisCheckpoint);
+		action.revertState(state, thisCheckpoint);
 		checkpoints.remove(checkpoints.size()-1);
+		if (jump) {
+			conflict = why;
+		}
+		else if ((nogoods != null) && !isCancelled()) {
+			conflict = why;
+			// A nogood of every decision above can only come up again
+			// with the same decisions made in another order, and isn't
+			// worth checking for
+			if (((counter == null) || (counter.getCount() == found))
+					&& (conflict != levelsBelow(level))) {
+				learn(conflict, level);
+			}
+		}
+		else {
+			conflict = levelsBelow(level);
+		}
+		// Only a search that ran to the end proves the state has no solution
+		if ((table != null) && !isCancelled()
+				&& ((counter == null) || (counter.getCount() == found))) {
+			table.markDead(hash, budget.getNumNodes() - nodes);
+		}
 		return false;
 	}
+	
+	/**
+	 * @param level search level
+	 * @return the bit of the level in a mask of levels
+	 */
+	private static long levelBit(int level) {
+		return 1L << Math.min(level, 63);
+	}
+	/**
+	 * @param level search level
+	 * @return mask of all the levels above it
+	 */
+	private static long levelsBelow(int level) {
+		return (level >= 63) ? -1L : (1L << level) - 1;
+	}
+	/**
+	 * @param levels mask of levels
+	 * @param level level to take out, kept if it shares bit 63 with others
+	 * @return the levels without the level
+	 */
+	private static long withoutLevel(long levels, int level) {
+		return (level >= 63) ? levels : levels & ~levelBit(level);
+	}
+	
+	/**
+	 * @param c constraint branched on
+	 * @return levels the candidates generated for the constraint depend on:
+	 *         the reasons of its bridges and their islands
+	 */
+	private long candidateReasons(Constraint c) {
+		long r = state.tracker(c).getReasons();
+		for (Bridge b : c.internalBridges) {
+			r |= state.tracker(b).getScopeReasons();
+		}
+		for (Bridge b : c.externalBridges) {
+			r |= state.tracker(b).getScopeReasons();
+		}
+		return r;
+	}
+	
+	/**
+	 * A candidate failed in propagation or was ruled out by a nogood
+	 * @param violated bridges of the nogood, null if propagation failed
+	 * @param level number of decisions above the node
+	 * @return the levels the failure depends on
+	 */
+	private long failureReasons(Bridge[] violated, int level) {
+		if (nogoods == null) {
+			return levelsBelow(level + 1);
+		}
+		if (violated != null) {
+			long r = 0;
+			for (Bridge b : violated) {
+				r |= state.tracker(b).getReasons();
+			}
+			return r;
+		}
+		Tracker failed = state.getPropagator().getFailed();
+		return (failed != null) ? failed.getScopeReasons() : levelsBelow(level + 1);
+	}
+	
+	/**
+	 * Learn the bridge scores of the decisions a failure depends on
+	 * as a nogood
+	 * @param levels levels whose decisions explain the failure
+	 * @param level number of decisions above the node that failed
+	 */
+	private void learn(long levels, int level) {
+		ArrayList<Bridge> bridges = new ArrayList<Bridge>();
+		ArrayList<Integer> scores = new ArrayList<Integer>();
+		for (int i = 0; i < level; i++) {
+			if ((levels & levelBit(i)) == 0) {
+				continue;
+			}
+			Decision d = decisions.get(i);
+			for (int k = 0; k < d.bridges.length; k++) {
+				bridges.add(d.bridges[k]);
+				scores.add(d.scores[k]);
+			}
+		}
+		if (!bridges.isEmpty()) {
+			nogoods.add(bridges, scores);
+		}
+	}
+	
+	/**
+	 * The bridge scores applied by choosing a candidate, for the bridges
+	 * whose score it chose
+	 */
+	private static class Decision {
+		final Bridge[] bridges;
+		final int[] scores;
 		
-	private static Comparator<ConstraintBridgeSolutions> solutionsComparator = 
-			new Comparator<ConstraintBridgeSolutions>() {
-        @Override
-        public int compare(ConstraintBridgeSolutions t1, ConstraintBridgeSolutions t2) {
-            return (t1.solutions.size() < t2.solutions.size() ? -1 :
-                    (t1.solutions.size() == t2.solutions.size()) ? 0 : 1);
-          }
-    };
-    
-	private class EstimateAndScore {
-		private ArrayList<BridgeEstimate> bset;
-		private int score;
-		private int index;
-
-		public EstimateAndScore(EstimateAndScore old)
-		{
-			this.score = old.score;
-			this.bset = new ArrayList<BridgeEstimate> ();
-			old.bset.stream().forEach(bs -> this.bset.add(bs.newInstance(bs)));
-			this.index = old.index;
-		}
-		public EstimateAndScore(Constraint c) {
-			this.bset = new ArrayList<BridgeEstimate> ();
-			c.internalBridges.stream()
-				.forEach(b -> bset.add(new BridgeEstimate(b, true, 2, b.tracker.getMinPossibleScore())));
-			c.externalBridges.stream()
-				.forEach(b -> bset.add(new BridgeEstimate(b, false, 1, b.tracker.getMinPossibleScore())));
-			this.score = computeScore();
-			this.index = 0;
-		}
-			
-		public void setEstimate(int e) {
-			bset.get(index).estimate = e;
-			computeScore();
-		}
-		private int computeScore() {
-			score = bset.stream()
-					.mapToInt(b -> b.estimate * b.multiple)
-					.sum();
-			return score;
+		Decision(Bridge[] bridges, int[] scores) {
+			this.bridges = bridges;
+			this.scores = scores;
 		}
-		public String Dump() {
-			StringBuilder builder = new StringBuilder();
-			bset.stream().forEach(b -> builder.append(b.toString()));
-			return String.format("EAS  score %d index %d bridges %s",
-					score, index, builder.toString());
+	}
+	
+	/**
+	 * Check a state with no constraints left to branch on. When counting,
+	 * a solution is recorded and the search carries on.
+	 * @return true if the search can stop here
+	 */
+	private boolean acceptLeaf() {
+		// Propagation may have been cut short by the budget
+		if (budget.isExhausted() || !isSolution()) {
+			return false;
 		}
+		if (counter == null) {
+			return true;
+		}
+		return counter.add(state);
+	}
+	
+	/**
+	 * @return true if the current tracker state is a complete valid solution
+	 */
+	private boolean isSolution() {
+		if (!(status.isValid() && status.complete()
+				&& state.getConnectivity().isConnected())) {
+			return false;
+		}
+		for (Constraint c : grid.getAllConstraints()) {
+			if (!state.tracker(c).targetMet()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Choose the unsolved constraint to branch on with the branching heuristic
+	 * @return candidate solutions of the chosen constraint, or null if all are solved
+	 */
+	private ConstraintBridgeSolutions nextBranch() {
+		Constraint c = heuristic.select(this, state);
+		return (c == null) ? null : new ConstraintBridgeSolutions(c);
+	}
+	
+	/**
+	 * Candidates are not enumerated here, the count is a cheap upper bound
+	 * on the number of candidates of the constraint.
+	 * @param c constraint
+	 * @return bound on its candidates in the current state, capped at solutionLimit
+	 */
+	long candidateBound(Constraint c) {
+		return new ConstraintBridgeSolutions(c).countUpTo(solutionLimit);
+	}
+	
+	/**
+	 * @param c constraint
+	 * @return generator of the candidate solutions of the constraint in the current state
+	 */
+	ConstraintBridgeSolutions candidatesFor(Constraint c) {
+		return new ConstraintBridgeSolutions(c);
 	}
 	
-	private class ConstraintBridgeSolutions {
+	// Candidate counts are capped at this value when choosing a constraint
+	private static final int solutionLimit = 10000;
+	
+	/**
+	 * Streaming generator of the candidate bridge assignments for a constraint.
+	 * 
+	 * A candidate gives every bridge of the constraint a score within its current
+	 * bounds, such that the island scores of the constraint sum to the target.
+	 * Internal bridges count twice (once for each island), external bridges once.
+	 * Candidates are generated one at a time on demand, by a depth first walk over
+	 * the bridges which is pruned by the remaining target and the remaining
+	 * capacity of the later bridges.
+	 */
+	class ConstraintBridgeSolutions {
 		private Constraint constraint;
-		private ArrayList<EstimateAndScore> recurState;
-		private ArrayList<EstimateAndScore> solutions;
-		private int solutionLimit;
-		private boolean recurValid;
 		
-		public ConstraintBridgeSolutions(Constraint c, int limit) {
-			init(c, limit);
-		}
+		// Per bridge: the bridge, its weight in the constraint score, its minimum
+		// score and the range of scores above the minimum
+		private Bridge[] bridges;
+		private int[] multiple;
+		private int[] minScore;
+		private int[] range;
+		// capacity[i] is the most the bridges from i onwards can add above their minimums
+		private int[] capacity;
+		// Score still to be allocated above the minimums
+		private int slack;
+		
+		// Generator state: value[i] is the score above the minimum chosen for bridge i
+		// and remaining[i] the slack left for bridges i onwards
+		private int[] value;
+		private int[] remaining;
+		private boolean started;
+		
+		// Scratch space for the connectivity check, indexed by island
+		private boolean[] inConstraint;
+		private boolean[] seen;
+		
 		public ConstraintBridgeSolutions(Constraint c) {
-			init(c, -1);
+			init(c);
 		}
-		private void init(Constraint c, int limit) {
+		
+		private void init(Constraint c) {
 			this.constraint = c;
-			this.solutionLimit = limit;
-			recurState = new ArrayList<EstimateAndScore> ();
-			solutions = new ArrayList<EstimateAndScore> ();
-			if (!c.hasTarget() || c.tracker.isSolved()) {
-				return;
+			started = false;
+			int n = c.internalBridges.size() + c.externalBridges.size();
+			bridges = new Bridge[n];
+			multiple = new int[n];
+			minScore = new int[n];
+			range = new int[n];
+			capacity = new int[n+1];
+			int k = 0;
+			for (Bridge b : c.internalBridges) {
+				bridges[k] = b;
+				multiple[k++] = 2;
+			}
+			for (Bridge b : c.externalBridges) {
+				bridges[k] = b;
+				multiple[k++] = 1;
+			}
+			int score = 0;
+			for (int i = 0; i < n; i++) {
+				TrackerBridge tb = state.tracker(bridges[i]);
+				minScore[i] = tb.getMinPossibleScore();
+				range[i] = Math.max(0, tb.getMaxPossibleScore() - minScore[i]);
+				score += minScore[i] * multiple[i];
+			}
+			for (int i = n-1; i >= 0; i--) {
+				capacity[i] = capacity[i+1] + range[i] * multiple[i];
+			}
+			slack = c.Target() - score;
+			if (!c.hasTarget() || state.tracker(c).isSolved()) {
+				// Nothing to generate
+				slack = -1;
 			}
-			recurState.add(new EstimateAndScore(c));
-			recurValid = true;
-			recur();
 		}
-	
+		
+		/**
+		 * Count the candidates ignoring the island and connectivity checks,
+		 * which gives an upper bound on the number of candidates. 
+		 * @param limit count at which to stop
+		 * @return the number of candidates up to limit
+		 */
+		public long countUpTo(long limit) {
+			if ((slack < 0) || (slack > capacity[0])) {
+				return 0;
+			}
+			// ways[s] = number of ways the bridges so far can add s above their minimums
+			long[] ways = new long[slack+1];
+			ways[0] = 1;
+			for (int i = 0; i < bridges.length; i++) {
+				if (range[i] == 0) {
+					continue;
+				}
+				for (int s = slack; s >= 0; s--) {
+					long w = 0;
+					for (int v = 0; (v <= range[i]) && (v * multiple[i] <= s); v++) {
+						w += ways[s - v * multiple[i]];
+					}
+					ways[s] = Math.min(w, limit);
+				}
+			}
+			return ways[slack];
+		}
+		
+		/**
+		 * Apply the next valid candidate to the bridge trackers.
+		 * @return true if a candidate was applied, false if there are no more
+		 */
 		public boolean updateWithNextSolution() {
-			if (solutions.size() == 0) {
-				return false;
+			while (nextAssignment()) {
+				if (checkSolution()) {
+					for (int i = 0; i < bridges.length; i++) {
+						TrackerBridge tb = state.tracker(bridges[i]);
+						action.changeMinimum(tb, minScore[i] + value[i]);
+						action.changeMaximum(tb, minScore[i] + value[i]);
+					}
+					return true;
+				}
+			}
+			return false; 
+		}
+		
+		/**
+		 * @return the bridge scores of the candidate last applied, leaving
+		 *         out the bridges whose score was already fixed
+		 */
+		Decision decision() {
+			int n = 0;
+			for (int i = 0; i < bridges.length; i++) {
+				if (range[i] > 0) {
+					n++;
+				}
 			}
-			EstimateAndScore sol = solutions.remove(solutions.size()-1);
-			for (BridgeEstimate be : sol.bset) {
-				action.changeMinimum(be.bridge.tracker, be.estimate);
-				action.changeMaximum(be.bridge.tracker, be.estimate);
+			Bridge[] chosen = new Bridge[n];
+			int[] scores = new int[n];
+			n = 0;
+			for (int i = 0; i < bridges.length; i++) {
+				if (range[i] > 0) {
+					chosen[n] = bridges[i];
+					scores[n++] = minScore[i] + value[i];
+				}
 			}
-			
-			return true; 
+			return new Decision(chosen, scores);
 		}
 		
-		private boolean reachOutside(IslandBase ib, TreeSet<IslandBase> seen, ArrayList<BridgeEstimate> be) {
-			boolean withinConstraint = false;
-			for (IslandBase cIsles: constraint.solidIslands){
-				withinConstraint = withinConstraint || Tracker.sameTracker(cIsles.tracker, ib.tracker);
+		/**
+		 * Step to the next assignment that meets the target, trying higher
+		 * scores first for each bridge.
+		 * @return true if there is another assignment, false otherwise
+		 */
+		boolean nextAssignment() {
+			int n = bridges.length;
+			int i;
+			if (!started) {
+				started = true;
+				if (slack < 0) {
+					return false;
+				}
+				if (n == 0) {
+					return (slack == 0);
+				}
+				value = new int[n];
+				remaining = new int[n];
+				remaining[0] = slack;
+				value[0] = Math.min(range[0], slack / multiple[0]) + 1;
+				i = 0;
+			}
+			else if (n == 0) {
+				return false;
+			}
+			else {
+				i = n-1;
 			}
-			if (!withinConstraint) {
+			while (i >= 0) {
+				value[i]--;
+				if ((value[i] < 0)
+						|| (value[i] * multiple[i] + capacity[i+1] < remaining[i])) {
+					// Lower scores can't reach the target either
+					i--;
+					continue;
+				}
+				if (i == n-1) {
+					return true;
+				}
+				int r = remaining[i] - value[i] * multiple[i];
+				i++;
+				remaining[i] = r;
+				value[i] = Math.min(range[i], r / multiple[i]) + 1;
+			}
+			return false;
+		}
+		
+		private int estimate(int i) {
+			return minScore[i] + value[i];
+		}
+		
+		private boolean reachOutside(IslandBase ib) {
+			if (!inConstraint[ib.index]) {
 				return true;
 			}
-			if (seen.contains(ib)) {
+			if (seen[ib.index]) {
 				return false;
 			}
-			seen.add(ib);
-			for (BridgeEstimate b : be) {
+			seen[ib.index] = true;
+			for (int i = 0; i < bridges.length; i++) {
+				Bridge b = bridges[i];
 				// If bridge leads to/from this node check if it connects outside
 				// or leaves an outside one isolated
-				if (Tracker.sameTracker(ib.tracker, b.bridge.toIsland.tracker)
-						|| Tracker.sameTracker(ib.tracker, b.bridge.fromIsland.tracker)) {
-					if (b.estimate > 0) {
-						if (reachOutside(b.bridge.otherEndIsland(ib), seen, be)) {
+				if ((b.toIsland == ib) || (b.fromIsland == ib)) {
+					if (estimate(i) > 0) {
+						if (reachOutside(b.otherEndIsland(ib))) {
 							return true;
 						}
 					}
@@ -295,104 +1110,53 @@ public class Solver {
 			return false;
 		}
 		
-		private void checkSolution(EstimateAndScore e) {
-			// Check (a) it doesn't leave any islands within constraint isolated
-			//       (b) none of the island limits are violated
-			for (BridgeEstimate b : e.bset) {
-				int tscore = b.bridge.toIsland.tracker.currentScore - b.bridge.tracker.currentScore + b.estimate;
-				if (tscore > b.bridge.toIsland.tracker.getMaxPossibleScore()) {
-					return;	
-				}
-				int fscore = b.bridge.fromIsland.tracker.currentScore - b.bridge.tracker.currentScore + b.estimate;
-				if (fscore > b.bridge.fromIsland.tracker.getMaxPossibleScore()) {
-					return;	
-				}
-				if (!reachOutside(b.bridge.toIsland, new TreeSet<IslandBase>(), e.bset)) {
-					return;
-				}
-				if (!reachOutside(b.bridge.fromIsland, new TreeSet<IslandBase>(), e.bset)) {
-					return;
+		private boolean reachOutsideFrom(IslandBase ib) {
+			if (inConstraint == null) {
+				int numIslands = grid.getAllIslands().size();
+				inConstraint = new boolean[numIslands];
+				seen = new boolean[numIslands];
+				for (IslandBase cIsles: constraint.solidIslands){
+					inConstraint[cIsles.index] = true;
 				}
 			}
-			solutions.add(e);
+			for (IslandBase cIsles: constraint.solidIslands){
+				seen[cIsles.index] = false;
+			}
+			return reachOutside(ib);
 		}
 		
-		private boolean recur() {
-			int rIndex = recurState.size()-1;
-			if ((rIndex < 0) || !recurValid){
-				return false;
-			}
-			EstimateAndScore est = recurState.remove( rIndex );
-			int space = constraint.Target() - est.score;
-			if (space == 0) {
-				checkSolution(est);
-				if (solutions.size() == solutionLimit) {
-					recurState.clear();
-					recurValid = false;
-					return true;
+		boolean checkSolution() {
+			// Check (a) it doesn't leave any islands within constraint isolated
+			//       (b) none of the island limits are violated
+			for (int i = 0; i < bridges.length; i++) {
+				Bridge b = bridges[i];
+				TrackerBridge tb = state.tracker(b);
+				TrackerIsland to = state.tracker(b.toIsland);
+				TrackerIsland from = state.tracker(b.fromIsland);
+				int tscore = to.getCurrentScore() - tb.getCurrentScore() + estimate(i);
+				if (tscore > to.getMaxPossibleScore()) {
+					return false;	
 				}
-				
-			}
-			else if (space < 0) {
-				// Already over target
-			}
-			else if (est.index >= est.bset.size()) {
-				// no more bridges to extend
-			}
-			else {
-				// Extend to find more solutions
-				BridgeEstimate be = est.bset.get(est.index);
-				if (be.extendable()) {
-					// change estimate
-					for (Integer s : IntStream.rangeClosed(be.estimate, be.maxScore()).toArray()) {
-						EstimateAndScore newEst = new EstimateAndScore(est);
-						newEst.setEstimate(s);
-						newEst.index += 1;
-						recurState.add(newEst);
-						recur();
-					}
+				int fscore = from.getCurrentScore() - tb.getCurrentScore() + estimate(i);
+				if (fscore > from.getMaxPossibleScore()) {
+					return false;	
+				}
+				if (!reachOutsideFrom(b.toIsland)) {
+					return false;
 				}
-				else {
-					// Leave this bridge, but try to change future bridges.
-					est.index = est.index+1;
-					recurState.add(est);
+				if (!reachOutsideFrom(b.fromIsland)) {
+					return false;
 				}
 			}
-			return recur();
+			return true;
 		}
 		
 		public String Dump() {
-			String s = "Num solutions = " + solutions.size();
-			
-			return s;
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < bridges.length; i++) {
+				builder.append(String.format("%s (%d)  ",  bridges[i].toString(), estimate(i) * multiple[i]));
+			}
+			return String.format("Constraint %s bridges %s", constraint.toString(), builder.toString());
  		}
 	}
-		
-	private class BridgeEstimate {
-		private Bridge bridge;
-		private int estimate;
-		private int multiple;
-		private boolean internal;
-
-		public BridgeEstimate(Bridge bridge, boolean internal, int multiple, int estimate) {
-			this.bridge = bridge;
-			this.multiple = multiple;
-			this.estimate = estimate;
-			this.internal = internal;
-		}
-		public boolean extendable() {
-			return (estimate < bridge.tracker.getMaxPossibleScore());
-		}
-		public int maxScore() {
-			return bridge.tracker.getMaxPossibleScore();
-		}
-		public BridgeEstimate newInstance(BridgeEstimate be) {
-			return new BridgeEstimate(bridge, internal, multiple, estimate);
-		}
-		public String toString() {
-			return String.format("%s (%d)  ",  bridge.toString(), estimate * multiple);
-		}
-	}	
 }
-
-
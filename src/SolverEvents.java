@@ -0,0 +1,311 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorder of solver events, for looking at a solve after it has run
+ * without the cost of logging text.
+ *
+ * Decisions, propagations, conflicts, checkpoints and reverts are kept in
+ * a fixed size ring buffer of primitive entries, the oldest overwritten
+ * once it is full. Recording takes no locks and allocates nothing, so one
+ * recorder can be shared by the solvers of a whole batch. Each entry has
+ * the time it was recorded, its type and two values whose meaning depends
+ * on the type (see the type constants).
+ *
+ * A writer claims its slot by swapping the slot's stamp for a busy mark,
+ * and stamps it with its sequence number once written. A reader only
+ * takes an entry whose stamp is the same before and after reading it.
+ * Writers only meet on a slot when one has fallen a whole buffer behind
+ * another; the later waits for the earlier to finish, and an earlier
+ * one finding a later entry already there drops its own.
+ *
+ * Each event is also emitted as a JDK Flight Recorder event, so that a
+ * recording (java -XX:StartFlightRecording ...) shows the search alongside
+ * the CPU samples. When no recording of the event type is running this
+ * costs a check per event, and the Flight Recorder event is only created
+ * when it is.
+ *
+ * @author legge
+ *
+ */
+public class SolverEvents {
+
+	// Event types, with what the two values of an entry hold
+
+	/** A candidate of a constraint was chosen: constraint index, search depth */
+	public static final int DECISION = 0;
+	/** Propagation ran: tracker updates run, checkpoint */
+	public static final int PROPAGATION = 1;
+	/** A candidate of a constraint failed: constraint index, search depth */
+	public static final int CONFLICT = 2;
+	/** A checkpoint was saved: checkpoint, 0 */
+	public static final int CHECKPOINT = 3;
+	/** The state was reverted: checkpoint, trail entries undone */
+	public static final int REVERT = 4;
+
+	private static final String[] typeNames = {
+			"decision", "propagation", "conflict", "checkpoint", "revert" };
+
+	// Each entry is a stamp, the time, the type with the first value,
+	// and the second value. The stamp is the entry's sequence number
+	// once it is written, busy while it is being written and empty
+	// before it is first written.
+	private static final int stride = 4;
+	private static final long busy = -1;
+	private static final long empty = -2;
+
+	private final AtomicLongArray entries;
+	private final int mask;
+	private final AtomicLong next;
+	private volatile boolean flightRecorder;
+
+	/**
+	 * @param capacity number of entries kept, rounded up to a power of two
+	 */
+	public SolverEvents(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		entries = new AtomicLongArray(size * stride);
+		mask = size - 1;
+		next = new AtomicLong();
+		flightRecorder = true;
+		for (int i = 0; i < size; i++) {
+			entries.set(i * stride, empty);
+		}
+	}
+
+	/**
+	 * @param on false to stop emitting Flight Recorder events
+	 */
+	public void setFlightRecorder(boolean on) {
+		flightRecorder = on;
+	}
+
+	/**
+	 * Record an event
+	 * @param type event type
+	 * @param a first value
+	 * @param b second value
+	 */
+	public void record(int type, int a, long b) {
+		long seq = next.getAndIncrement();
+		int i = (int) (seq & mask) * stride;
+		if (!claim(i, seq)) {
+			return;
+		}
+		entries.lazySet(i + 1, System.nanoTime());
+		entries.lazySet(i + 2, ((long) type << 32) | (a & 0xffffffffL));
+		entries.lazySet(i + 3, b);
+		entries.set(i, seq);
+		if (flightRecorder) {
+			emit(type, a, b);
+		}
+	}
+
+	/**
+	 * Mark a slot busy for writing
+	 * @param i index of the slot's stamp
+	 * @param seq sequence number of the entry to write
+	 * @return false if a later entry is already in the slot
+	 */
+	private boolean claim(int i, long seq) {
+		while (true) {
+			long stamp = entries.get(i);
+			if (stamp == busy) {
+				Thread.yield();
+			}
+			else if (stamp > seq) {
+				return false;
+			}
+			else if (entries.compareAndSet(i, stamp, busy)) {
+				return true;
+			}
+		}
+	}
+
+	/** @return number of events recorded, including those overwritten */
+	public long getNumRecorded() {
+		return next.get();
+	}
+	/** @return number of entries the buffer keeps */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * One entry of the buffer
+	 */
+	public static class Entry {
+		public final long seq;
+		public final long time;
+		public final int type;
+		public final int a;
+		public final long b;
+
+		Entry(long seq, long time, int type, int a, long b) {
+			this.seq = seq;
+			this.time = time;
+			this.type = type;
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d %d %s %d %d", seq, time, typeNames[type], a, b);
+		}
+	}
+
+	/**
+	 * Copy out the entries still held, oldest first. Entries overwritten
+	 * while being copied, if events are still being recorded, are left out.
+	 * @return the entries
+	 */
+	public ArrayList<Entry> snapshot() {
+		ArrayList<Entry> list = new ArrayList<Entry>();
+		long end = next.get();
+		for (long seq = Math.max(0, end - mask - 1); seq < end; seq++) {
+			int i = (int) (seq & mask) * stride;
+			if (entries.get(i) != seq) {
+				continue;
+			}
+			long time = entries.get(i + 1);
+			long typeAndA = entries.get(i + 2);
+			long b = entries.get(i + 3);
+			if (entries.get(i) == seq) {
+				list.add(new Entry(seq, time, (int) (typeAndA >>> 32), (int) typeAndA, b));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Write the entries still held, oldest first, one per line:
+	 *     sequence  time(ns)  type  a  b
+	 * @param out stream to write to
+	 */
+	public void write(PrintStream out) {
+		for (Entry e : snapshot()) {
+			out.println(e);
+		}
+		out.flush();
+	}
+
+	private static void emit(int type, int a, long b) {
+		switch (type) {
+		case DECISION:
+			if (FlightTypes.decision.isEnabled()) {
+				DecisionEvent d = new DecisionEvent();
+				d.constraint = a;
+				d.depth = (int) b;
+				d.commit();
+			}
+			break;
+		case PROPAGATION:
+			if (FlightTypes.propagation.isEnabled()) {
+				PropagationEvent p = new PropagationEvent();
+				p.updates = a;
+				p.checkpoint = (int) b;
+				p.commit();
+			}
+			break;
+		case CONFLICT:
+			if (FlightTypes.conflict.isEnabled()) {
+				ConflictEvent c = new ConflictEvent();
+				c.constraint = a;
+				c.depth = (int) b;
+				c.commit();
+			}
+			break;
+		case CHECKPOINT:
+			if (FlightTypes.checkpoint.isEnabled()) {
+				CheckpointEvent k = new CheckpointEvent();
+				k.checkpoint = a;
+				k.commit();
+			}
+			break;
+		case REVERT:
+			if (FlightTypes.revert.isEnabled()) {
+				RevertEvent r = new RevertEvent();
+				r.checkpoint = a;
+				r.undone = b;
+				r.commit();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	// The Flight Recorder event types, registered on the first event
+	// emitted rather than whenever a recorder is made
+	private static class FlightTypes {
+		static final EventType decision = EventType.getEventType(DecisionEvent.class);
+		static final EventType propagation = EventType.getEventType(PropagationEvent.class);
+		static final EventType conflict = EventType.getEventType(ConflictEvent.class);
+		static final EventType checkpoint = EventType.getEventType(CheckpointEvent.class);
+		static final EventType revert = EventType.getEventType(RevertEvent.class);
+	}
+
+	// Flight Recorder events
+
+	@Name("hashi.Decision")
+	@Label("Decision")
+	@Category("Hashi Solver")
+	@Description("A candidate of a constraint was chosen")
+	static class DecisionEvent extends jdk.jfr.Event {
+		@Label("Constraint")
+		int constraint;
+		@Label("Depth")
+		int depth;
+	}
+
+	@Name("hashi.Propagation")
+	@Label("Propagation")
+	@Category("Hashi Solver")
+	@Description("Trackers were updated to a fixpoint")
+	static class PropagationEvent extends jdk.jfr.Event {
+		@Label("Tracker Updates")
+		int updates;
+		@Label("Checkpoint")
+		int checkpoint;
+	}
+
+	@Name("hashi.Conflict")
+	@Label("Conflict")
+	@Category("Hashi Solver")
+	@Description("A candidate of a constraint failed in propagation")
+	static class ConflictEvent extends jdk.jfr.Event {
+		@Label("Constraint")
+		int constraint;
+		@Label("Depth")
+		int depth;
+	}
+
+	@Name("hashi.Checkpoint")
+	@Label("Checkpoint")
+	@Category("Hashi Solver")
+	@Description("A checkpoint of the solver state was saved")
+	static class CheckpointEvent extends jdk.jfr.Event {
+		@Label("Checkpoint")
+		int checkpoint;
+	}
+
+	@Name("hashi.Revert")
+	@Label("Revert")
+	@Category("Hashi Solver")
+	@Description("The solver state was reverted to a checkpoint")
+	static class RevertEvent extends jdk.jfr.Event {
+		@Label("Checkpoint")
+		int checkpoint;
+		@Label("Trail Entries Undone")
+		long undone;
+	}
+}
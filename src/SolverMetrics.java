@@ -0,0 +1,207 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the work done by solves, for sizing how many solvers a
+ * load of puzzles needs.
+ *
+ * Counts search nodes, tracker updates by tracker type, backtracks with
+ * the depth they happened at, the deepest search level reached, how many
+ * candidates each branch tried and the time spent in each phase of a
+ * solve. The counters are LongAdders, striped so that the branches of a
+ * parallel search, or all the solves of a batch, can share one metrics
+ * object without contending for it.
+ *
+ * The counters can be written out as JSON (see toJson).
+ *
+ * @author legge
+ *
+ */
+public class SolverMetrics {
+
+	// Depths from maxDepth up share the last bucket
+	private static final int maxDepth = 64;
+	// Candidates per branch are bucketed by powers of two: 0, 1, 2-3, 4-7 ...
+	private static final int numSizeBuckets = 16;
+
+	private final LongAdder solves;
+	private final LongAdder nodes;
+	private final LongAdder islandUpdates;
+	private final LongAdder bridgeUpdates;
+	private final LongAdder constraintUpdates;
+	private final LongAdder backtracks;
+	private final LongAccumulator deepest;
+	private final LongAdder[] backtrackDepths;
+	private final LongAdder[] candidateSizes;
+	// Nanoseconds spent in each phase, by phase name
+	private final ConcurrentHashMap<String, LongAdder> phaseNanos;
+
+	public SolverMetrics() {
+		solves = new LongAdder();
+		nodes = new LongAdder();
+		islandUpdates = new LongAdder();
+		bridgeUpdates = new LongAdder();
+		constraintUpdates = new LongAdder();
+		backtracks = new LongAdder();
+		deepest = new LongAccumulator(Math::max, 0);
+		backtrackDepths = newAdders(maxDepth);
+		candidateSizes = newAdders(numSizeBuckets);
+		phaseNanos = new ConcurrentHashMap<String, LongAdder>();
+	}
+
+	private static LongAdder[] newAdders(int n) {
+		LongAdder[] a = new LongAdder[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = new LongAdder();
+		}
+		return a;
+	}
+
+	/** Count a solve started */
+	public void solve() {
+		solves.increment();
+	}
+
+	/**
+	 * Count a search node
+	 * @param depth number of decisions above the node
+	 */
+	public void node(int depth) {
+		nodes.increment();
+		deepest.accumulate(depth);
+	}
+
+	/**
+	 * Count a tracker update run by propagation
+	 * @param t tracker updated
+	 */
+	public void update(Tracker t) {
+		if (t instanceof TrackerBridge) {
+			bridgeUpdates.increment();
+		}
+		else if (t instanceof TrackerIsland) {
+			islandUpdates.increment();
+		}
+		else {
+			constraintUpdates.increment();
+		}
+	}
+
+	/**
+	 * Count a candidate being undone to try the next
+	 * @param depth number of decisions above the node backtracked to
+	 */
+	public void backtrack(int depth) {
+		backtracks.increment();
+		backtrackDepths[Math.min(depth, maxDepth - 1)].increment();
+	}
+
+	/**
+	 * Count the candidates a branch tried
+	 * @param n number of candidates
+	 */
+	public void candidates(long n) {
+		int bucket = 64 - Long.numberOfLeadingZeros(n);
+		candidateSizes[Math.min(bucket, numSizeBuckets - 1)].increment();
+	}
+
+	/**
+	 * Add the time spent in a phase of a solve
+	 * @param phase name of the phase
+	 * @param nanos time spent
+	 */
+	public void time(String phase, long nanos) {
+		phaseNanos.computeIfAbsent(phase, p -> new LongAdder()).add(nanos);
+	}
+
+	/** @return number of solves */
+	public long getNumSolves() {
+		return solves.sum();
+	}
+	/** @return number of search nodes */
+	public long getNumNodes() {
+		return nodes.sum();
+	}
+	/** @return number of tracker updates, of all types */
+	public long getNumUpdates() {
+		return islandUpdates.sum() + bridgeUpdates.sum() + constraintUpdates.sum();
+	}
+	/** @return number of backtracks */
+	public long getNumBacktracks() {
+		return backtracks.sum();
+	}
+	/** @return deepest search level reached */
+	public long getMaxDepth() {
+		return deepest.get();
+	}
+	/**
+	 * @param phase name of the phase
+	 * @return nanoseconds spent in the phase
+	 */
+	public long getPhaseNanos(String phase) {
+		LongAdder a = phaseNanos.get(phase);
+		return (a == null) ? 0 : a.sum();
+	}
+
+	/**
+	 * @return search nodes per second of search, over all the solves
+	 */
+	public double getNodesPerSecond() {
+		long nanos = getPhaseNanos("search");
+		return (nanos == 0) ? 0 : getNumNodes() * 1e9 / nanos;
+	}
+
+	/**
+	 * The counters as a JSON object. Histograms are arrays by bucket:
+	 * backtrack depths by depth, the last bucket holding all the deeper
+	 * ones, and candidates per branch by powers of two, bucket k counting
+	 * branches that tried 2^(k-1) to 2^k - 1 candidates.
+	 * Times are in milliseconds.
+	 * Counters being added to while this runs may be part counted.
+	 * @return the JSON text
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"solves\": ").append(getNumSolves()).append(",\n");
+		sb.append("  \"nodes\": ").append(getNumNodes()).append(",\n");
+		sb.append("  \"nodesPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", getNodesPerSecond())).append(",\n");
+		sb.append("  \"updates\": {\"island\": ").append(islandUpdates.sum())
+			.append(", \"bridge\": ").append(bridgeUpdates.sum())
+			.append(", \"constraint\": ").append(constraintUpdates.sum()).append("},\n");
+		sb.append("  \"backtracks\": ").append(getNumBacktracks()).append(",\n");
+		sb.append("  \"maxDepth\": ").append(getMaxDepth()).append(",\n");
+		sb.append("  \"backtrackDepths\": ").append(jsonArray(backtrackDepths)).append(",\n");
+		sb.append("  \"candidatesPerBranch\": ").append(jsonArray(candidateSizes)).append(",\n");
+		sb.append("  \"phaseMillis\": {");
+		String sep = "";
+		for (Map.Entry<String, LongAdder> e : new TreeMap<String, LongAdder>(phaseNanos).entrySet()) {
+			sb.append(sep).append('"').append(e.getKey()).append("\": ")
+				.append(String.format(Locale.ROOT, "%.3f", e.getValue().sum() / 1e6));
+			sep = ", ";
+		}
+		sb.append("}\n");
+		sb.append("}");
+		return sb.toString();
+	}
+
+	// Trailing empty buckets are left out
+	private static String jsonArray(LongAdder[] buckets) {
+		int n = buckets.length;
+		while ((n > 0) && (buckets[n-1].sum() == 0)) {
+			n--;
+		}
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(buckets[i].sum());
+		}
+		return sb.append(']').toString();
+	}
+}
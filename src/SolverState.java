@@ -0,0 +1,213 @@
+/**
+ * The mutable state of one solution attempt for a grid.
+ *
+ * The grid definition holds the fixed topology of the puzzle (islands,
+ * bridges and constraints). All the working scores live in trackers held
+ * here, indexed by the entity index assigned when the grid was finalized.
+ * Any number of solver states can share one grid, so concurrent solves or
+ * search branches only need their own state rather than a copy of the grid.
+ *
+ * The tracker values themselves are held in flat arrays of primitives
+ * (see TrackerData) so propagation and backtracking don't allocate.
+ *
+ * Each state has its own undo log, solver status and island connectivity.
+ * The status counts of unsolved trackers are kept by the tracker data.
+ *
+ * @author legge
+ *
+ */
+public class SolverState {
+
+	private final GridDefinition grid;
+
+	private final TrackerIsland[] islands;
+	private final TrackerBridge[] bridges;
+	private final TrackerConstraint[] constraints;
+
+	private final TrackerData data;
+	private final SolverStatus status;
+	private final Trail trail;
+	private final Propagator propagator;
+	private final Connectivity connectivity;
+
+	/**
+	 * Create trackers for every entity in a finalized grid.
+	 * The trackers are not initialized until init is called.
+	 * @param g the finalized grid definition
+	 */
+	public SolverState(GridDefinition g) {
+		grid = g;
+		trail = new Trail();
+		propagator = new Propagator();
+		connectivity = new Connectivity(g.getAllIslands().size());
+		connectivity.setTrail(trail);
+		islands = new TrackerIsland[g.getAllIslands().size()];
+		bridges = new TrackerBridge[g.getAllBridges().size()];
+		constraints = new TrackerConstraint[g.getAllConstraints().size()];
+		// Slots: islands, then bridges, then constraints
+		data = new TrackerData(islands.length + bridges.length + constraints.length,
+				islands.length, bridges.length);
+		data.setTrail(trail);
+		status = new SolverStatus(data);
+		int slot = 0;
+		for (int i = 0; i < islands.length; i++) {
+			islands[i] = new TrackerIsland();
+			if (g.getIsland(i).isSolid()) {
+				data.setKind(slot, TrackerData.KIND_ISLAND);
+			}
+			islands[i].attach(data, slot++, i);
+		}
+		for (int i = 0; i < bridges.length; i++) {
+			bridges[i] = new TrackerBridge();
+			data.setKind(slot, TrackerData.KIND_BRIDGE);
+			bridges[i].attach(data, slot++, i);
+		}
+		for (int i = 0; i < constraints.length; i++) {
+			constraints[i] = new TrackerConstraint();
+			if (g.getConstraint(i).hasTarget()) {
+				data.setKind(slot, TrackerData.KIND_CONSTRAINT);
+			}
+			constraints[i].attach(data, slot++, i);
+		}
+	}
+
+	/**
+	 * Create an independent copy of another state for the same grid.
+	 * The copy starts with an empty undo log.
+	 * @param other state to copy
+	 */
+	public SolverState(SolverState other) {
+		this(other.grid);
+		init();
+		copyFrom(other);
+	}
+
+	/**
+	 * Initialize all trackers to the starting bounds for the grid,
+	 * discarding any previous state and undo history.
+	 */
+	public void init() {
+		trail.reset();
+		data.reset();
+		propagator.clear();
+		propagator.resetFailed();
+		connectivity.init(grid);
+		for (IslandBase ib : grid.getAllIslands()) {
+			tracker(ib).init(ib, this);
+		}
+		for (Constraint c : grid.getAllConstraints()) {
+			tracker(c).init(c, this);
+		}
+		for (Bridge b : grid.getAllBridges()) {
+			tracker(b).init(b, this);
+			if (tracker(b).nonZeroScore()) {
+				connectivity.connect(b);
+			}
+		}
+	}
+
+	/**
+	 * Copy all tracker values from another state of the same grid
+	 * @param other state to copy from
+	 */
+	public void copyFrom(SolverState other) {
+		for (int i = 0; i < islands.length; i++) {
+			islands[i].copyBase(other.islands[i]);
+		}
+		for (int i = 0; i < bridges.length; i++) {
+			bridges[i].copyBase(other.bridges[i]);
+		}
+		for (int i = 0; i < constraints.length; i++) {
+			constraints[i].copyBase(other.constraints[i]);
+		}
+		connectivity.copyFrom(other.connectivity);
+		status.setValid(other.status.isValid());
+	}
+
+	/**
+	 * Start or stop keeping the reasons for the tracker values, the search
+	 * levels they were derived from (see TrackerData). The current values
+	 * are taken as given.
+	 * @param on true to keep reasons
+	 */
+	public void setExplaining(boolean on) {
+		data.setExplaining(on);
+		propagator.setExplained(on ? data : null);
+	}
+
+	/**
+	 * @param levels search levels of the decision about to be applied,
+	 *               the reasons for the changes it makes
+	 */
+	public void setCause(long levels) {
+		data.setCause(levels);
+	}
+
+	/** @return hash of the bridge domains, equal for states with equal domains */
+	public long getHash() {
+		return data.getHash();
+	}
+
+	/**
+	 * @return log2 of the number of ways the bridges could still be
+	 *         scored, ignoring the constraints between them
+	 */
+	public double getLogSearchSpace() {
+		return data.getLogSearchSpace();
+	}
+
+	/**
+	 * @return the bridge scores as a string of digits in bridge order,
+	 *         the form a solution is written and compared in
+	 */
+	public String solutionString() {
+		StringBuilder sb = new StringBuilder();
+		for (TrackerBridge tb : bridges) {
+			sb.append(tb.getCurrentScore());
+		}
+		return sb.toString();
+	}
+
+	/** @return the grid definition this state belongs to */
+	public GridDefinition getGrid() {
+		return grid;
+	}
+	/** @return the status of this solution attempt */
+	public SolverStatus getStatus() {
+		return status;
+	}
+	/** @return the undo log the trackers record their changes on */
+	public Trail getTrail() {
+		return trail;
+	}
+	/** @return the engine that propagates tracker changes */
+	public Propagator getPropagator() {
+		return propagator;
+	}
+	/** @return the components of islands joined by used bridges */
+	public Connectivity getConnectivity() {
+		return connectivity;
+	}
+
+	/**
+	 * @param ib island
+	 * @return the tracker for the island
+	 */
+	public TrackerIsland tracker(IslandBase ib) {
+		return islands[ib.index];
+	}
+	/**
+	 * @param b bridge
+	 * @return the tracker for the bridge
+	 */
+	public TrackerBridge tracker(Bridge b) {
+		return bridges[b.index];
+	}
+	/**
+	 * @param c constraint
+	 * @return the tracker for the constraint
+	 */
+	public TrackerConstraint tracker(Constraint c) {
+		return constraints[c.index];
+	}
+}
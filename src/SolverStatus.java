@@ -1,39 +1,29 @@
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.stream.Collector;
-import java.util.stream.Collectors;
-
 /**
  * Class to track the status of a solution path
- * 
- * This doesn't do any solution processing but tracks validity
- * by inspecting the current trackers
- * 
+ *
+ * This doesn't do any solution processing but tracks validity,
+ * and reports the number of unsolved bridges, solid islands and
+ * constraints with a target. The counts are kept by the tracker data
+ * as the solved flags change and are undone with them on backtrack,
+ * so reading them, or checking for completion, is constant time.
+ *
  * @author legge
  *
  */
 public class SolverStatus {
 
-	private HashMap<Integer, TrackerIsland> graphExemplar;
-	
-	private int numUnsolvedBridges;
-	private int numUnsolvedIslands;
-	private int numUnsolvedConstraints;
+	private final TrackerData data;
 
-	private int numIslandGroups;
 	private boolean valid;
-	
-	public SolverStatus() {
-		graphExemplar = new HashMap<Integer, TrackerIsland> ();
 
-		numUnsolvedBridges = 1;
-		numUnsolvedIslands = 1;
-		numUnsolvedConstraints = 1;
-		
-		numIslandGroups = 0;
+	/**
+	 * @param d tracker data of the solver state
+	 */
+	public SolverStatus(TrackerData d) {
+		data = d;
 		valid = true;
 	}
-	
+
 
 	public void setValid(boolean v) {
 		valid = v;
@@ -41,88 +31,29 @@ public class SolverStatus {
 	public boolean isValid() {
 		return valid;
 	}
-	
-	public void decrementUnsolvedBridges() {
-		numUnsolvedBridges -= 1;
-	}
-	public void decrementUnsolvedIslands() {
-		numUnsolvedBridges -= 1;
-	}
-	public void decrementUnsolvedConstraints() {
-		numUnsolvedBridges -= 1;
-	}
-	
-	public boolean complete(GridDefinition gd) {
-		return 
-				(gd.getAllSolidIslands().stream()
-				.filter(ib -> !ib.tracker.isSolved())
-				.count() == 0);
-	}
-	
-	public void init(GridDefinition gd) {
 
-		gd.getAllSolidIslands().stream()
-		.filter(ib -> !ib.tracker.isSolved())
-		.forEach(ib -> updateGraphExemplar(ib.tracker));
-				
-		resetCounts(gd);
-	}
-	
-	public void resetCounts(GridDefinition gd) {
-		numUnsolvedBridges = (int) gd.getAllBridges().stream()
-				.filter(c -> !c.tracker.isSolved())
-				.count();
-			
-		numUnsolvedIslands = (int) gd.getAllSolidIslands().stream()
-				.filter(ib -> !ib.tracker.isSolved())
-				.count();
-			
-		numUnsolvedConstraints = (int) gd.getAllConstraints().stream()
-				.filter(c -> c.hasTarget())
-				.filter(c -> !c.tracker.isSolved())
-				.count();
-		
-		resetGraphExemplars(gd.getAllSolidIslands().stream()
-				.map( i -> i.tracker)
-				.collect(Collectors.toCollection(ArrayList::new))
-				);
-		
+	public int getNumUnsolvedBridges() {
+		return data.getNumUnsolved(TrackerData.KIND_BRIDGE);
 	}
-	
-	public void resetGraphExemplars(ArrayList<TrackerIsland> tlist ) {
-		/*
-		graphExemplar.clear();
-		for (TrackerIsland ti : tlist) {
-			updateGraphExemplar(ti);
-		}
-		numIslandGroups = graphExemplar.size();
-		*/
+	public int getNumUnsolvedIslands() {
+		return data.getNumUnsolved(TrackerData.KIND_ISLAND);
 	}
-	
-	public void updateGraphExemplar(TrackerIsland it) {
-		/*
-		if (!graphExemplar.containsKey(it.groupId)){
-			graphExemplar.put(it.groupId, it);
-			numIslandGroups = graphExemplar.size();
-		}
-		*/
+	public int getNumUnsolvedConstraints() {
+		return data.getNumUnsolved(TrackerData.KIND_CONSTRAINT);
 	}
-	
-	public void removeGraphExemplar(TrackerIsland it) {
-		/*
-		if (graphExemplar.containsKey(it.groupId)){
-			graphExemplar.remove(it.groupId);
-			numIslandGroups = graphExemplar.size();
-		}
-		*/
+
+	/**
+	 * @return true if every solid island is solved
+	 */
+	public boolean complete() {
+		return getNumUnsolvedIslands() == 0;
 	}
-	
+
 	public String Dump(String delim) {
 		return String.join(delim
-			,String.format("NumUnsolvedBridges %d", numUnsolvedBridges)
-			,String.format("NumUnsolvedIslands %d", numUnsolvedIslands)
-			,String.format("NumUnsolvedConstraints %d", numUnsolvedConstraints)
-			,String.format("NumIslandGroups %d", numIslandGroups)
+			,String.format("NumUnsolvedBridges %d", getNumUnsolvedBridges())
+			,String.format("NumUnsolvedIslands %d", getNumUnsolvedIslands())
+			,String.format("NumUnsolvedConstraints %d", getNumUnsolvedConstraints())
 			);
 	}
 	public String Dump() {
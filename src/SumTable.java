@@ -0,0 +1,106 @@
+/**
+ * Table of the sets of distinct island values that make up each sum.
+ *
+ * An island's value is the number of bridges to it, at most
+ * TrackerBridge.maxWeight in each of the four directions. The values
+ * making up a constraint's sum can't repeat (rule 5 in the README), so the
+ * islands of a constraint must take the values of one of the sets listed
+ * here for their number of islands and the target.
+ *
+ * A set of values is held as a bit mask, bit v set for value v.
+ *
+ * The table is built once for a grid, up to the largest target in it, and
+ * only read afterwards so it can be shared by every solver state.
+ *
+ * @author legge
+ *
+ */
+public class SumTable {
+
+	static final int maxValue = 4 * TrackerBridge.maxWeight;
+	private static final int[] none = new int[0];
+
+	// sets[k][t] lists the sets of k distinct values adding up to t
+	private final int[][][] sets;
+	// values[k][t] has every value used by any of those sets
+	private final int[][] values;
+
+	/**
+	 * @param maxTarget the largest target the table needs to cover
+	 */
+	public SumTable(int maxTarget) {
+		int maxTotal = Math.max(0, maxTarget);
+		int[][] count = new int[maxValue + 1][maxTotal + 1];
+		for (int s = 0; s < (1 << maxValue); s++) {
+			int total = total(s << 1);
+			if (total <= maxTotal) {
+				count[Integer.bitCount(s)][total]++;
+			}
+		}
+		sets = new int[maxValue + 1][maxTotal + 1][];
+		values = new int[maxValue + 1][maxTotal + 1];
+		for (int k = 0; k <= maxValue; k++) {
+			for (int t = 0; t <= maxTotal; t++) {
+				sets[k][t] = (count[k][t] == 0) ? none : new int[count[k][t]];
+				count[k][t] = 0;
+			}
+		}
+		for (int s = 0; s < (1 << maxValue); s++) {
+			int set = s << 1;
+			int total = total(set);
+			if (total <= maxTotal) {
+				int k = Integer.bitCount(set);
+				sets[k][total][count[k][total]++] = set;
+				values[k][total] |= set;
+			}
+		}
+	}
+
+	private static int total(int set) {
+		int total = 0;
+		for (int v = 1; v <= maxValue; v++) {
+			if ((set & (1 << v)) != 0) {
+				total += v;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * @param k number of islands
+	 * @param target sum of their values
+	 * @return the sets of k distinct values adding up to target, possibly none
+	 */
+	public int[] sets(int k, int target) {
+		if ((k < 0) || (k > maxValue) || (target < 0) || (target >= values[0].length)) {
+			return none;
+		}
+		return sets[k][target];
+	}
+
+	/**
+	 * @param k number of islands
+	 * @param target sum of their values
+	 * @return every value that can make up the sum, as a mask
+	 */
+	public int values(int k, int target) {
+		if ((k < 0) || (k > maxValue) || (target < 0) || (target >= values[0].length)) {
+			return 0;
+		}
+		return values[k][target];
+	}
+
+	/**
+	 * @param lo lowest value
+	 * @param hi highest value
+	 * @return mask of the values from lo to hi that an island can have
+	 */
+	static int valueRange(int lo, int hi) {
+		lo = Math.max(lo, 0);
+		hi = Math.min(hi, maxValue);
+		if (lo > hi) {
+			return 0;
+		}
+		return ((1 << (hi + 1)) - 1) & ~((1 << lo) - 1);
+	}
+}
@@ -14,6 +14,7 @@ import java.util.stream.Collectors;
  * Tracker base class which is the main data store for a solution candidate
  * 
  * There will be a tracker for each bridge, island and constraint
+ * held in the SolverState of each solution attempt
  * 
  * This will track the bounds of the possible scores of each entity and
  * mark whether it is solved or not.
@@ -29,55 +30,61 @@ public class Tracker {
     
 	protected final int uid;   // A unique id for this tracker.
 	
-	protected Helper thisLog;  // A logger
+	private static final Helper baseLog = Helper.forUnit("TrackerBase");
 	
-	protected boolean valid;              // Tracker is consistent with valid solution
-	protected boolean solved;  // Tracker is completely resolved
-	protected boolean massIsKnown; // know the final score, but may not be solved
-	
-	//  Max and min give a range of allowable total scores;
-	//  If these are equal then we know the expected final score
-	protected int maxPossibleScore;
-	protected int minPossibleScore;
-	
-	// This is the score currently allocated to the tracker
-	//  i.e. bridges assigned to islands, islands total for constraints
-	protected int currentScore;
-	
-	//  MassAllocated is the currently known score
-	//  note that this may be less than the min
-	//  since this is the work in progress not the final score
-	protected int massAllocated;
-	
-	//  This is a group id for a set of connected elements.
-	//  if two trackers are in the same group then they are
-	//  connected by non-zero paths.
-	protected int groupId;
+	protected Helper thisLog;  // A logger, shared by all trackers of a class
 	
+	// The values of the tracker live in the data of its solver state,
+	// at this tracker's slot:
+	//  valid         Tracker is consistent with valid solution
+	//  solved        Tracker is completely resolved
+	//  massIsKnown   know the final score, but may not be solved
+	//  max and min   give a range of allowable total scores;
+	//                if these are equal then we know the expected final score
+	//  current       the score currently allocated to the tracker
+	//                i.e. bridges assigned to islands, islands total for constraints
+	//  mass          the currently known score, note that this may be less
+	//                than the min since this is the work in progress not the final score
+	protected TrackerData data;
+	protected int slot;
+	// Index of the entity among those of its kind
+	protected int index;
 	
 	protected SolverStatus solverStatus;
-	
+	// The solver state this tracker belongs to, used to find the trackers
+	// of neighbouring entities
+	protected SolverState state;
+	// Set while the tracker is waiting in the propagation queue
+	boolean queued;
+
 	String entity;
-	// For recording a stack of histories
-	ArrayList<Tracker> history;
-	int historyId;
-	
+
 	/**
 	 * Constructor initializes all common variables
 	 */
 	public Tracker() {
-		thisLog = new Helper("TrackerBase");
+		thisLog = baseLog;
 		entity = "Base";
 		uid = nextId.incrementAndGet();
-		valid = true;
-		solved = false;
-		currentScore = 0;
-		massAllocated = 0;
-		massIsKnown = false;
-		groupId = 0;
-		history = new ArrayList<Tracker> ();
-		historyId = 0;
+		// The values are kept in the data of the solver state it is attached to
+		data = null;
+		slot = 0;
+		index = 0;
 		solverStatus = null;
+		state = null;
+		queued = false;
+	}
+
+	/**
+	 * Keep the values of this tracker in the data of a solver state
+	 * @param d data holding the values
+	 * @param s slot of this tracker in the data
+	 * @param i index of the entity among those of its kind
+	 */
+	public void attach(TrackerData d, int s, int i) {
+		data = d;
+		slot = s;
+		index = i;
 	}
 	
 	/**
@@ -92,19 +99,19 @@ public class Tracker {
 	}
 
 	public boolean nonZeroScoreAvailable() {
-		return (maxPossibleScore > 0);
+		return (getMaxPossibleScore() > 0);
 	}
 	public boolean zeroScoreAvailable() {
-		return (minPossibleScore == 0);
+		return (getMinPossibleScore() == 0);
 	}
 	public boolean nonZeroScore() {
-		return (minPossibleScore > 0);
+		return (getMinPossibleScore() > 0);
 	}
 	public boolean zeroScore() {
-		return (maxPossibleScore == 0);
+		return (getMaxPossibleScore() == 0);
 	}
 	public int maxMinusMin() {
-		return maxPossibleScore - minPossibleScore;
+		return getMaxPossibleScore() - getMinPossibleScore();
 	}
 	
 	//
@@ -113,18 +120,25 @@ public class Tracker {
 		return true;
 	}
 
-	// A placeholder for overrides
-	public int updateGroupId() {
-		return groupId;
+	// Ask for this tracker to be re-evaluated by the propagation engine
+	// of its solver state. Trackers outside a solver state are updated
+	// straight away.
+	public void scheduleUpdate() {
+		if (state == null) {
+			update();
+		}
+		else {
+			state.getPropagator().schedule(this);
+		}
 	}
+
 	//
 	// Fix the final score if we know it
 	public boolean freezeFinalScore(int v) {
-		minPossibleScore = v;
-		maxPossibleScore = v;
-		massAllocated = v;
+		assignBounds(v, v);
+		assignMass(v);
 		// Note the current score is not frozen
-		update();
+		scheduleUpdate();
 		return true;
 	}
 	
@@ -134,67 +148,78 @@ public class Tracker {
 		return entity;
 	}
 	boolean setMaxPossibleScore(int a) {
-		if (a > maxPossibleScore) {
+		if (a > getMaxPossibleScore()) {
 			return false;
 		}
-		maxPossibleScore = a;
-		update();
+		assignMax(a);
+		scheduleUpdate();
 		return true;
 	}
 	boolean setMinPossibleScore(int a) {
-		if (a < minPossibleScore) {
+		if (a < getMinPossibleScore()) {
 			return false;
 		}
-		minPossibleScore = a;
-		update();
+		assignMin(a);
+		scheduleUpdate();
 		return true;
 	}
 	boolean setKnownScore(int a) {
-		massAllocated = a;
-		massIsKnown = true;
-		update();
+		assignMass(a);
+		assignMassKnown(true);
+		scheduleUpdate();
 		return true;
 	}
 	
 	// Return the score according to summing the (min) assigned values
 	// of sub components
 	public int getCurrentScore() {
-		return currentScore;
+		return data.current[slot];
 	}
 	// Return the score according to current knowledge
 	// this could be current allocated / min score or known final
 	public int getKnownScore() {
-		return massAllocated;
+		return data.mass[slot];
 	}
 	
 	public int getMinPossibleScore() {
-		return minPossibleScore;
+		return data.min[slot];
 	}
 	public int getMaxPossibleScore() {
-		return maxPossibleScore;
-	}
-	public int getGroupId() {
-		return groupId;
+		return data.max[slot];
 	}
 	public boolean isValid() {
-		return valid;
+		return isMarkedValid();
+	}
+	// The valid flag as last assigned, sub classes work out isValid afresh
+	public boolean isMarkedValid() {
+		return data.isSet(slot, TrackerData.VALID);
 	}
 	public boolean isSolved() {
-		return solved;
+		return data.isSet(slot, TrackerData.SOLVED);
 	}
 	public boolean isMassKnown() {
-		return massIsKnown;
+		return data.isSet(slot, TrackerData.MASS_KNOWN);
+	}
+	// The search levels this tracker's values were derived from,
+	// while conflicts are being explained (see TrackerData)
+	public long getReasons() {
+		return data.getReasons(slot);
+	}
+	// The reasons of everything an update of this tracker reads,
+	// which become reasons of whatever the update changes
+	public long getScopeReasons() {
+		return getReasons();
 	}
 
 	public boolean allowMin(int m) {
-		return (m <= maxPossibleScore)
-				&& (m >= minPossibleScore);
+		return (m <= getMaxPossibleScore())
+				&& (m >= getMinPossibleScore());
 	}
 
 	public boolean allowMax(int m) {
-		return (m <= maxPossibleScore)
-				&& (m >= minPossibleScore)
-				&& (m >= massAllocated);
+		return (m <= getMaxPossibleScore())
+				&& (m >= getMinPossibleScore())
+				&& (m >= getKnownScore());
 	}
 	
 	public boolean isError(boolean condition, String desc) {
@@ -212,14 +237,14 @@ public class Tracker {
 			String source) {
 		boolean err = false;
 		
-		err = isError( current.solved, source + " Changing solved Tracker") || err;
-		err = isError( (changed.maxPossibleScore > current.maxPossibleScore), 
+		err = isError( current.isSolved(), source + " Changing solved Tracker") || err;
+		err = isError( (changed.getMaxPossibleScore() > current.getMaxPossibleScore()), 
 				source + " maxPossible bounds: > existing max") || err;
 			
-		err = isError( (changed.minPossibleScore < current.minPossibleScore), 
+		err = isError( (changed.getMinPossibleScore() < current.getMinPossibleScore()), 
 					source + " minPossible bounds: < existing min") || err;
 			
-		err = isError( (changed.massAllocated < current.massAllocated),
+		err = isError( (changed.getKnownScore() < current.getKnownScore()),
 					source + " massAllocated > maxPossible bounds") || err;
 		
 		if (err) {
@@ -233,79 +258,60 @@ public class Tracker {
 	public boolean violation() {
 		boolean err = false;
 		
-		if (solved) {
-			if (massIsKnown) {
-				if (massAllocated != currentScore) {
+		if (isSolved()) {
+			if (isMassKnown()) {
+				if (getKnownScore() != getCurrentScore()) {
 					err = true;
 				}
 			}
 		}
 		else {
-			if (minPossibleScore > maxPossibleScore){
+			if (getMinPossibleScore() > getMaxPossibleScore()){
 				err = true;
 			}
 		}
 		if (err) {
-			thisLog.Log("Error in tracker:" + Dump());
+			thisLog.Log(() -> "Error in tracker:" + Dump());
 		}
 		return err;
 	}
 	
-	public void addHistory(int id) {
-		Tracker tc = new Tracker();
-		tc.copyBase(this);
-		tc.historyId = id;
-		history.add(tc);	
+	// Field assignment goes through these so that every change
+	// is recorded on the trail and can be undone on backtrack.
+	protected void assignMin(int v) {
+		data.set(slot, TrackerData.FIELD_MIN, v);
 	}
-	
-	
-	public static Comparator<Tracker> historyComparator = new Comparator<Tracker>() {
-        @Override
-        public int compare(Tracker t1, Tracker t2) {
-            return (t1.historyId < t2.historyId ? -1 :
-                    (t1.historyId == t2.historyId) ? 0 : 1);
-          }
-    };
-	
-	public boolean revertHistory(int id) {
-		// Remove all histories in the new future;
-		history.removeIf( h-> (h.historyId > id));
-		if (!history.isEmpty()){
-			Collections.sort(history, historyComparator);
-			this.copyBase(history.get(history.size()-1));
-			// update();
-			//if (thisLog != null) {
-			//thisLog.Log(true, "Reverting ID " + historyId  + "  asked " + id);
-			//}
-			return true;
-		}
-		return false;
+	protected void assignMax(int v) {
+		data.set(slot, TrackerData.FIELD_MAX, v);
 	}
-	
-	public boolean revertHistoryButKeep(int id) {
-		// Remove all histories in the new future;
-		int h = 0;
-		while ((h < history.size() -1) 
-			&& (history.get(h+1).historyId <= id)) {
-			h = h+1;
-		}
-		if (h < history.size()-1){
-			this.copyBase(history.get(h));
-			return true;
-		}
-		return false;
+	// Set both bounds at once, which sub classes may hold together
+	protected void assignBounds(int min, int max) {
+		assignMin(min);
+		assignMax(max);
+	}
+	protected void assignMass(int v) {
+		data.set(slot, TrackerData.FIELD_MASS, v);
+	}
+	protected void assignCurrent(int v) {
+		data.set(slot, TrackerData.FIELD_CURRENT, v);
+	}
+	protected void assignSolved(boolean v) {
+		data.setFlag(slot, TrackerData.SOLVED, v);
+	}
+	protected void assignMassKnown(boolean v) {
+		data.setFlag(slot, TrackerData.MASS_KNOWN, v);
+	}
+	protected void assignValid(boolean v) {
+		data.setFlag(slot, TrackerData.VALID, v);
 	}
 	
 	public void copyBase(Tracker tb) {
-		minPossibleScore = tb.minPossibleScore;
-		maxPossibleScore = tb.maxPossibleScore;
-		massAllocated = tb.massAllocated;
-		currentScore = tb.currentScore;
-		solved = tb.solved;
-		massIsKnown = tb.massIsKnown;
-		groupId = tb.groupId;
-		valid = tb.valid;
-		historyId = tb.historyId;
+		assignBounds(tb.getMinPossibleScore(), tb.getMaxPossibleScore());
+		assignMass(tb.getKnownScore());
+		assignCurrent(tb.getCurrentScore());
+		assignSolved(tb.isSolved());
+		assignMassKnown(tb.isMassKnown());
+		assignValid(tb.isMarkedValid());
 	}
 
 	
@@ -359,7 +365,6 @@ public class Tracker {
 		cmps.add( new CmpPair().addInt("MaxPossible", Tracker::getMaxPossibleScore));
 		cmps.add( new CmpPair().addInt("KnownScore", Tracker::getKnownScore));
 		cmps.add( new CmpPair().addInt("CurrentScore", Tracker::getCurrentScore));
-		cmps.add( new CmpPair().addInt("GroupId", Tracker::getGroupId));
 		
 		cmps.add( new CmpPair().addBool("isSolved", Tracker::isSolved));
 		//cmps.add( new CmpPair().addBool("isValid", Tracker::isValid));
@@ -384,15 +389,13 @@ public class Tracker {
 	
 	public String Dump(String sep) {
 		return String.join(sep,  
-			String.format("Valid %s  ", valid)
-			,String.format("Solved: %s  ", solved)
-			, String.format("Min: %s  ", minPossibleScore)
-			, String.format("Max: %s  ", maxPossibleScore)
-			, String.format("Known mass %s  %d", massIsKnown ? 
-					"Yes " : "No" , massAllocated )
-			, String.format("Current %s  ", currentScore)
-			, String.format("GroupId %s  ", groupId)
-			, String.format("HistoryId %s  ", historyId)
+			String.format("Valid %s  ", isMarkedValid())
+			,String.format("Solved: %s  ", isSolved())
+			, String.format("Min: %s  ", getMinPossibleScore())
+			, String.format("Max: %s  ", getMaxPossibleScore())
+			, String.format("Known mass %s  %d", isMassKnown() ? 
+					"Yes " : "No" , getKnownScore() )
+			, String.format("Current %s  ", getCurrentScore())
 			);
 			
 	}
@@ -1,7 +1,6 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
-import java.util.OptionalInt;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -13,34 +12,61 @@ import java.util.stream.IntStream;
  * specific questions to handle a bridges crossing
  * at null points.
  * 
+ * The bounds of a bridge are held as its domain, the set of
+ * scores still possible, rather than as a min and max.
+ * 
  * @author legge
  *
  */
 public class TrackerBridge extends Tracker {
 
 	static final int maxWeight = 2;
+	private static final Helper classLog = Helper.forUnit("TrackerBridge");
+	private static final Helper updateLog = Helper.forUnit("TrackerBridge::Update");
 	Bridge bridge;
 	
 	public TrackerBridge(){
-		thisLog = new Helper("TrackerBridge");
+		thisLog = classLog;
 		entity = "Bridge";
 	}
 		
-	public void init(Bridge b, SolverStatus status) {
+	public void init(Bridge b, SolverState st) {
 		bridge = b;
-		solverStatus = status;
+		state = st;
+		solverStatus = st.getStatus();
 		int limit = maxWeight;
-		OptionalInt lower = b.constraints.stream()
-				.filter(c -> c.hasTarget())
-				.mapToInt(t -> t.Target()).min(); 
-		if (lower.isPresent()) {
-			if (lower.getAsInt() >= 0) {
-				limit = Math.min(limit, lower.getAsInt());
+		for (Constraint c : b.constraints) {
+			if (c.hasTarget() && (c.Target() >= 0)) {
+				limit = Math.min(limit, c.Target());
 			}
 		}
 		
-		minPossibleScore = 0;
-		maxPossibleScore = limit;
+		assignBounds(0, limit);
+	}
+	
+	/**
+	 * @return the scores still possible for this bridge, bit n set for score n
+	 */
+	public int getDomain() {
+		return data.getDomain(index);
+	}
+	
+	// The bounds are the lowest and highest scores left in the domain,
+	// an empty domain has its min above its max
+	public int getMinPossibleScore() {
+		return TrackerData.domainMin(data.getDomain(index));
+	}
+	public int getMaxPossibleScore() {
+		return TrackerData.domainMax(data.getDomain(index));
+	}
+	protected void assignMin(int v) {
+		assignBounds(v, getMaxPossibleScore());
+	}
+	protected void assignMax(int v) {
+		assignBounds(getMinPossibleScore(), v);
+	}
+	protected void assignBounds(int min, int max) {
+		data.setDomain(index, TrackerData.interval(min, max));
 	}
 	
 	/*
@@ -54,65 +80,79 @@ public class TrackerBridge extends Tracker {
 	 */
 	public boolean update() {
 		
-		Helper thisLog = new Helper("TrackerBridge::Update");
-		//thisLog.debugIf(thisLog.interest(bridge));
-		thisLog.Log( "On Entry " + Dump());
-		//updateGroupId();
+		boolean debug = updateLog.isActive(); // || updateLog.interest(bridge);
+		if (debug) {
+			updateLog.Log(true, "On Entry " + Dump());
+		}
 		
-		if (solved) {
+		if (isSolved()) {
 			return false;
 		}
 		
 		// Allocated and current are the same for bridges
-		massAllocated = minPossibleScore;
-		currentScore = minPossibleScore;
+		assignMass(getMinPossibleScore());
+		assignCurrent(getMinPossibleScore());
 		
 		if (!isNullCrossingsPathAvailable(true)) {
-			maxPossibleScore = 0;
+			assignMax(0);
 		}
 		if ( !this.zeroScoreAvailable() ) {
 			claimNullCrossingsPath();
 		}
 		
-		if (bridge.fromIsland.tracker.solved
-				|| bridge.toIsland.tracker.solved) {
-			solved = true;
+		if (state.tracker(bridge.fromIsland).isSolved()
+				|| state.tracker(bridge.toIsland).isSolved()) {
+			assignSolved(true);
 		}
-		if (minPossibleScore == maxPossibleScore) {
-			solved = true;
+		if (getMinPossibleScore() == getMaxPossibleScore()) {
+			assignSolved(true);
 		}
 
-		if (solved) {
-			massIsKnown = true;
-			maxPossibleScore = minPossibleScore;
-			solverStatus.decrementUnsolvedBridges();
+		if (isSolved()) {
+			assignMassKnown(true);
+			assignMax(getMinPossibleScore());
 		}
 		// Update the islands
-		bridge.fromIsland.tracker.update();
-		bridge.toIsland.tracker.update();
+		state.tracker(bridge.fromIsland).scheduleUpdate();
+		state.tracker(bridge.toIsland).scheduleUpdate();
 		
-		updateGroupId();
-		valid = isValid();
-		if (!valid) {
-			Helper.Print("BridgeTracker", "Bridge status = false ");
+		// A bridge that must be used joins the islands' components
+		if (nonZeroScore()) {
+			state.getConnectivity().connect(bridge);
+		}
+		assignValid(isValid());
+		if (!isMarkedValid()) {
+			thisLog.Log("Bridge status = false ");
 			solverStatus.setValid(false);
 		}
-		thisLog.Log( "On Exit " + Dump());
-		return solved;
+		if (debug) {
+			updateLog.Log(true, "On Exit " + Dump());
+		}
+		return isSolved();
+	}
+	
+	public long getScopeReasons() {
+		long r = getReasons()
+				| state.tracker(bridge.fromIsland).getReasons()
+				| state.tracker(bridge.toIsland).getReasons();
+		for (Bridge b : bridge.crossings) {
+			r |= state.tracker(b).getReasons();
+		}
+		return r;
 	}
 	
 	public boolean isValid() {
-		if (currentScore > maxWeight) {
+		if (getCurrentScore() > maxWeight) {
 			return false;
 		}
-		if (minPossibleScore > maxPossibleScore) {
+		if (getMinPossibleScore() > getMaxPossibleScore()) {
 			return false;
 		}
-		if (massAllocated > maxPossibleScore) {
+		if (getKnownScore() > getMaxPossibleScore()) {
 			return false;
 		}
-		if (solved) {
-			if (massAllocated != currentScore) {
+		if (isSolved()) {
+			if (getKnownScore() != getCurrentScore()) {
 				return false;
 			}
 		}
@@ -121,7 +161,7 @@ public class TrackerBridge extends Tracker {
 
 	// Is bridge modifiable?
 	public boolean bridgeCanBeModified() {
-		if (solved) {
+		if (isSolved()) {
 			return false;
 		}
 		if (!isNullCrossingsPathAvailable(true)){
@@ -131,11 +171,11 @@ public class TrackerBridge extends Tracker {
 		if (maxMinusMin() == 0) {
 			return false;
 		}
-		if (bridge.fromIsland.tracker.solved || bridge.toIsland.tracker.solved) {
+		if (state.tracker(bridge.fromIsland).isSolved() || state.tracker(bridge.toIsland).isSolved()) {
 			return false;
 		}
 		for (Constraint c : bridge.constraints) {
-			if (c.tracker.solved) {
+			if (state.tracker(c).isSolved()) {
 				return false;
 			}
 		}
@@ -143,66 +183,49 @@ public class TrackerBridge extends Tracker {
 	}
 	
 	
-	public int updateGroupId() {
-		if ( !this.zeroScoreAvailable() ) {
-			groupId = Math.min( bridge.fromIsland.tracker.groupId,
-								bridge.toIsland.tracker.groupId);
-			
-		}
-		return groupId;
-	}
-	
-	
 	// Return the null crossing bridges
-	//  do this by checking the bridges through each node that aren't this one.
+	//  these are the bridges through each null island that aren't this one.
 	public ArrayList<Bridge> getNullCrossingBridges() {
-		ArrayList<Bridge> nullBridge = new ArrayList<Bridge>();
-		for (IslandBase ib : bridge.iNulls) {
-			// If the bridge contains option 0 then it hasn't been assigned
-			ib.bridges.stream()
-				.filter(b -> !sameTracker(this, b.tracker))
-				.forEach(b -> nullBridge.add(b));
-		}
-		return nullBridge;
+		return new ArrayList<Bridge>(Arrays.asList(bridge.crossings));
 	}
 	
 	// Check if the null path crossing is still available/undecided
 	//  do this by checking the bridges through each node that aren't this one.
 	public boolean isNullCrossingsPathAvailable(boolean forMeOnly) {
-		int c = 0;
-		for (IslandBase ib : bridge.iNulls) {
-			// If the bridge contains option 0 then it hasn't been assigned
-			c += ib.bridges.stream()
-					.filter(b -> (!forMeOnly || !sameTracker(this, b.tracker)))
-					.filter(b -> !b.tracker.zeroScoreAvailable())
-					.count();
+		// If a crossing bridge contains option 0 then it hasn't been assigned
+		for (Bridge b : bridge.crossings) {
+			if (!state.tracker(b).zeroScoreAvailable()) {
+				return false;
+			}
+		}
+		// The bridge itself counts when it passes a null island
+		if (!forMeOnly && !bridge.iNulls.isEmpty()) {
+			return zeroScoreAvailable();
 		}
-		return (c==0);
+		return true;
 	}
 	
 	
 	// Claim the null crossing path
 	private boolean claimNullCrossingsPath() {
-		for (IslandBase ib : bridge.iNulls) {
-			ib.bridges.stream()
-				.filter(b -> !sameTracker(this,b.tracker))
-				.forEach(b -> b.tracker.freezeFinalScore(0));
+		for (Bridge b : bridge.crossings) {
+			state.tracker(b).freezeFinalScore(0);
 		}
 		return true;
 	}
 	
 	public String getGroupString() {
 		return String.format("Bridge: %s -> %s %d",
-				bridge.fromIsland.tracker.getGroupString(),
-				bridge.toIsland.tracker.getGroupString(),
-				bridge.tracker.minPossibleScore
+				state.tracker(bridge.fromIsland).getGroupString(),
+				state.tracker(bridge.toIsland).getGroupString(),
+				getMinPossibleScore()
 				);
 	}
 	
 	public String Dump() {
 		return String.format("Bridge: %s -> %s \n",
-				bridge.fromIsland.tracker.getGroupString(),
-				bridge.toIsland.tracker.getGroupString())
+				state.tracker(bridge.fromIsland).getGroupString(),
+				state.tracker(bridge.toIsland).getGroupString())
 				+ super.Dump();
 				
 	}
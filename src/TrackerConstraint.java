@@ -1,6 +1,5 @@
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.OptionalInt;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -14,25 +13,25 @@ import java.util.stream.IntStream;
  */
 public class TrackerConstraint extends Tracker {
 
+	private static final Helper classLog = Helper.forUnit("TrackerConstraint");
 	Constraint constraint;
 	
 		
 	public TrackerConstraint(){
-		thisLog = new Helper("TrackerConstraint");
+		thisLog = classLog;
 		entity = "Constraint";
 	}
 	
-	public void init(Constraint s, SolverStatus status){
+	public void init(Constraint s, SolverState st){
 		constraint = s;	
-		solverStatus = status;
-		solved = false;
-		valid = true;;
-		maxPossibleScore = (int) constraint.solidIslands.stream()
-				.mapToLong(i -> i.tracker.maxPossibleScore).sum();
-		minPossibleScore = (int) constraint.solidIslands.stream()
-				.mapToLong(i -> i.tracker.minPossibleScore).sum();
-		massIsKnown = s.hasTarget();
-		massAllocated = massIsKnown ? s.Target() : 0;
+		state = st;
+		solverStatus = st.getStatus();
+		assignSolved(false);
+		assignValid(true);
+		assignMax(sumMaxPossible());
+		assignMin(sumMinPossible());
+		assignMassKnown(s.hasTarget());
+		assignMass(isMassKnown() ? s.Target() : 0);
 	}
 	
 	/*
@@ -44,117 +43,228 @@ public class TrackerConstraint extends Tracker {
 	 * @see Tracker#update()
 	 */
 	public boolean update() {
-		//updateGroupId();
 		if (!constraint.hasTarget()) {
 			return false;
 		}
-		if (solved == true) {
+		if (isSolved()) {
 			return false;
 		}
 		boolean changed = false;
-		int numUnsolvedIslands = (int)
-				(constraint.solidIslands.stream()
-						.filter(i -> !i.tracker.solved).count());
+		int numUnsolvedIslands = 0;
+		int current = 0;
+		int massscore = 0;
+		for (IslandBase ib : constraint.solidIslands) {
+			TrackerIsland ti = state.tracker(ib);
+			if (!ti.isSolved()) {
+				numUnsolvedIslands++;
+			}
+			current += ti.getCurrentScore();
+			massscore += ti.getKnownScore();
+		}
 				
 		if (numUnsolvedIslands == 0) {
-			solved = true;
+			assignSolved(true);
 			changed = true;
 		}
 		
-		currentScore = (int) constraint.solidIslands.stream()
-				.mapToLong(i -> i.tracker.currentScore)
-				.sum();
-		if (currentScore == constraint.Target()) {
-			solved = true;
+		assignCurrent(current);
+		if (getCurrentScore() == constraint.Target()) {
+			assignSolved(true);
 			changed = true;
 		}
 		else  {
-			int massscore = (int) constraint.solidIslands.stream()
-					.mapToLong(i -> i.tracker.massAllocated).sum();
 			if (massscore == constraint.Target()) {
-				solved = true;
+				assignSolved(true);
 				changed = true;
-				constraint.solidIslands.stream()
-					.forEach(i -> 
-					i.tracker.setMaxPossibleScore(i.tracker.massAllocated));
+				for (IslandBase ib : constraint.solidIslands) {
+					TrackerIsland ti = state.tracker(ib);
+					ti.setMaxPossibleScore(ti.getKnownScore());
+				}
 			}
 			// Don't mark solved until currentScore is correct.
 		}
 		
 		// Update min/max possible
-		int newScore = (int) constraint.solidIslands.stream()
-				.mapToLong(i -> i.tracker.maxPossibleScore).sum();
-		if (newScore != maxPossibleScore) {
-			maxPossibleScore = newScore;
+		int newScore = sumMaxPossible();
+		if (newScore != getMaxPossibleScore()) {
+			assignMax(newScore);
 			changed = true;
 		}
-		newScore = (int) constraint.solidIslands.stream()
-				.mapToLong(i -> i.tracker.minPossibleScore).sum();
-		if (newScore != minPossibleScore) {
-			minPossibleScore = newScore;
+		newScore = sumMinPossible();
+		if (newScore != getMinPossibleScore()) {
+			assignMin(newScore);
 			changed = true;
 		}
-		valid = isValid();
-		if (!valid) {
+		boolean distinct = pruneDistinctValues();
+		assignValid(distinct && isValid());
+		if (!isMarkedValid()) {
 			solverStatus.setValid(false);
 		}
-		if (solved) {
-			solverStatus.decrementUnsolvedConstraints();
-			if (false &&!valid) {
-				Helper hh = new Helper("TrackerConstraint");
+		if (isSolved()) {
+			if (false &&!isMarkedValid()) {
+				Helper hh = thisLog;
 				hh.Error("Failed: " + Dump());
 				hh.Error("Solved constraint not matched target");
 				hh.Error(String.format("mmScores: %s",  
-						(minPossibleScore != maxPossibleScore)));
+						(getMinPossibleScore() != getMaxPossibleScore())));
 				hh.Error(String.format("ccheck: %s",  
-						constraint.matchTarget(maxPossibleScore)));
+						constraint.matchTarget(getMaxPossibleScore())));
 				hh.Error(this.Dump());
 			}
 		}
 		return changed;
 	}
+	
+	/**
+	 * The island values of a sum can't repeat (rule 5), so together they
+	 * must be one of the sets of distinct values adding up to the target.
+	 * Keep the sets that agree with the islands' bounds and narrow each
+	 * island to the values left in them, less the values already taken
+	 * by islands whose value is known.
+	 * @return false if no set of values is left
+	 */
+	private boolean pruneDistinctValues() {
+		int taken = 0;
+		for (IslandBase ib : constraint.solidIslands) {
+			TrackerIsland ti = state.tracker(ib);
+			if (ti.getMinPossibleScore() == ti.getMaxPossibleScore()) {
+				int v = 1 << Math.min(ti.getMinPossibleScore(), SumTable.maxValue + 1);
+				if ((taken & v) != 0) {
+					return false;
+				}
+				taken |= v;
+			}
+		}
+		int allowed = 0;
+		for (int set : state.getGrid().getSums().sets(constraint.solidIslands.size(), constraint.Target())) {
+			if ((set & taken) != taken) {
+				continue;
+			}
+			boolean fits = true;
+			for (IslandBase ib : constraint.solidIslands) {
+				TrackerIsland ti = state.tracker(ib);
+				if ((set & SumTable.valueRange(ti.getMinPossibleScore(), ti.getMaxPossibleScore())) == 0) {
+					fits = false;
+					break;
+				}
+			}
+			if (fits) {
+				allowed |= set;
+			}
+		}
+		if (allowed == 0) {
+			return false;
+		}
+		for (IslandBase ib : constraint.solidIslands) {
+			TrackerIsland ti = state.tracker(ib);
+			if (ti.getMinPossibleScore() == ti.getMaxPossibleScore()) {
+				continue;
+			}
+			int values = allowed & ~taken
+					& SumTable.valueRange(ti.getMinPossibleScore(), ti.getMaxPossibleScore());
+			if (values == 0) {
+				return false;
+			}
+			int lo = Integer.numberOfTrailingZeros(values);
+			int hi = 31 - Integer.numberOfLeadingZeros(values);
+			if (lo > ti.getMinPossibleScore()) {
+				ti.setMinPossibleScore(lo);
+			}
+			if (hi < ti.getMaxPossibleScore()) {
+				ti.setMaxPossibleScore(hi);
+			}
+		}
+		return true;
+	}
+	
+	private int sumMaxPossible() {
+		int sum = 0;
+		for (IslandBase ib : constraint.solidIslands) {
+			sum += state.tracker(ib).getMaxPossibleScore();
+		}
+		return sum;
+	}
+	private int sumMinPossible() {
+		int sum = 0;
+		for (IslandBase ib : constraint.solidIslands) {
+			sum += state.tracker(ib).getMinPossibleScore();
+		}
+		return sum;
+	}
+	
+	public long getScopeReasons() {
+		long r = getReasons();
+		for (IslandBase ib : constraint.solidIslands) {
+			r |= state.tracker(ib).getReasons();
+		}
+		return r;
+	}
+	
 	// These updates are stateful
 	// ie depend on other states or bridges.
 	public boolean isValid() {
-		if (minPossibleScore > maxPossibleScore) {
+		if (getMinPossibleScore() > getMaxPossibleScore()) {
 			return false;
 		}
-		if (massAllocated > maxPossibleScore) {
+		if (getKnownScore() > getMaxPossibleScore()) {
 			return false;
 		}
-		if (solved) {
-			if (massAllocated != currentScore) {
+		if (isSolved()) {
+			if (getKnownScore() != getCurrentScore()) {
 				return false;
 			}
-			if (!constraint.matchTarget(currentScore)){
+			if (!constraint.matchTarget(getCurrentScore())){
 				return false;
 			}
 		}
 		return true;
 	}
 
-	public int updateGroupId() {
-		OptionalInt v = constraint.solidIslands.stream()
-			.mapToInt( b -> b.tracker.groupId)
-			.min();
-		if (v.isPresent()) {
-			groupId = v.getAsInt();
-		}
-		return groupId;
+	/**
+	 * Check the target against the current island scores, which is only
+	 * meaningful once all the islands are solved.
+	 * @return true if the constraint has no target or the island scores sum
+	 *         to it without repeating a value
+	 */
+	public boolean targetMet() {
+		if (!constraint.hasTarget()) {
+			return true;
+		}
+		int score = 0;
+		int values = 0;
+		for (IslandBase ib : constraint.solidIslands) {
+			int v = state.tracker(ib).getCurrentScore();
+			if ((v < 32) && ((values & (1 << v)) != 0)) {
+				// A value repeated within the sum
+				return false;
+			}
+			values |= (v < 32) ? (1 << v) : 0;
+			score += v;
+		}
+		return constraint.matchTarget(score);
+	}
+	
+	/**
+	 * @return the choices left in the bridges of the constraint: the sum
+	 *         over its unsolved bridges of their max less their min score
+	 */
+	public int openChoices() {
+		int n = 0;
+		for (Bridge b : constraint.bridges) {
+			TrackerBridge tb = state.tracker(b);
+			if (!tb.isSolved()) {
+				n += tb.maxMinusMin();
+			}
+		}
+		return n;
 	}
 	
 	public static Comparator<TrackerConstraint> mostBridgesComparator = 
 			new Comparator<TrackerConstraint>() {
         @Override
         public int compare(TrackerConstraint t1, TrackerConstraint t2) {
-        	int c1 = (int) t1.constraint.bridges.stream()
-        				.filter(b -> !b.tracker.isSolved())
-        				.mapToInt(b -> b.tracker.maxMinusMin())
-        				.sum();
-        	int c2 = (int) t2.constraint.bridges.stream()
-    				.filter(b -> !b.tracker.isSolved())
-    				.mapToInt(b -> b.tracker.maxMinusMin())
-    				.count();
+        	int c1 = t1.openChoices();
+        	int c2 = t2.openChoices();
             return (c1 > c2) ? -1 :  (c1 == c2) ? 0 : 1;
  
           }
@@ -172,19 +282,19 @@ public class TrackerConstraint extends Tracker {
 	public String asString() {
 		int numUnsolvedIslands = (int)
 				(constraint.solidIslands.stream()
-						.filter(i -> !i.tracker.solved).count());
+						.filter(i -> !state.tracker(i).isSolved()).count());
 		int numUnsolvedBridges = (int)
-				(constraint.solidIslands.stream()
-						.mapToInt(k -> k.tracker.numUnsolvedBridges)
-						.sum());
+				(constraint.bridges.stream()
+						.filter(b -> !state.tracker(b).isSolved()).count());
 		return String.format(
-		 "Constraint: %s %s maxP %d minP %d   Unsolved Bridges %d, Unsolved Islands %d  massAlloc %d maxMassRemaining %d\n", 
+		 "Constraint: %s %s maxP %d minP %d   Unsolved Bridges %d, Unsolved Islands %d  massAlloc %d\n", 
 				constraint.toString(),
-				solved ? "Solved" : "Open",
-				maxPossibleScore, 
-				minPossibleScore,
+				isSolved() ? "Solved" : "Open",
+				getMaxPossibleScore(), 
+				getMinPossibleScore(),
 				numUnsolvedBridges,
-				numUnsolvedIslands
+				numUnsolvedIslands,
+				getKnownScore()
 				);
 		
 	}
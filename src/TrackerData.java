@@ -0,0 +1,447 @@
+import java.util.Arrays;
+
+/**
+ * Primitive storage for the tracker values of a solver state.
+ *
+ * The trackers of a solver state don't hold their scores themselves, each
+ * one has a slot in these arrays instead: islands first, then bridges, then
+ * constraints, each in entity index order. The scores of all the trackers
+ * are then held in a few flat arrays that propagation reads and writes
+ * without allocating.
+ *
+ * A bridge score is only ever 0 to TrackerBridge.maxWeight, so a bridge's
+ * bounds are kept as a domain: a 3 bit mask of the scores still possible,
+ * packed 21 to a long. Islands and constraints keep their bounds in the
+ * min and max arrays.
+ *
+ * Every change is recorded on the trail so it can be undone.
+ *
+ * The number of unsolved trackers of each kind is counted as the solved
+ * flags change, and the count follows the flags back when changes are
+ * undone, so the solver status never needs to scan the trackers.
+ *
+ * The bridges are also counted by domain size as their domains change,
+ * which gives the size of the search space left without a scan.
+ *
+ * A Zobrist hash of the bridge domains is kept up to date as they change,
+ * so that states reached by different routes can be recognised.
+ *
+ * While conflicts are being explained, each tracker also has the reasons
+ * for its values: a mask of the search levels whose decisions they were
+ * derived from. Each change adds the cause set by whoever is making it (the
+ * reasons of what a propagating tracker read, or the level of a decision).
+ * Bit 63 stands for every level from 63 down.
+ *
+ * @author legge
+ *
+ */
+public class TrackerData implements Undoable {
+
+	// Field codes used when recording changes on the trail,
+	// the slot (or bridge index for domains) is encoded with the field
+	static final int FIELD_MIN = 0;
+	static final int FIELD_MAX = 1;
+	static final int FIELD_MASS = 2;
+	static final int FIELD_CURRENT = 3;
+	static final int FIELD_FLAGS = 4;
+	static final int FIELD_DOMAIN = 5;
+	// Reasons are longs, recorded on the trail in two halves
+	static final int FIELD_REASONS_LO = 6;
+	static final int FIELD_REASONS_HI = 7;
+	private static final int numFields = 8;
+
+	// Flag bits
+	static final int SOLVED = 1;
+	static final int MASS_KNOWN = 2;
+	static final int VALID = 4;
+
+	// Kinds of tracker whose unsolved trackers are counted
+	static final int KIND_OTHER = 0;
+	static final int KIND_BRIDGE = 1;
+	static final int KIND_ISLAND = 2;     // solid islands
+	static final int KIND_CONSTRAINT = 3; // constraints with a target
+	private static final int numKinds = 4;
+
+	// Bridge domains
+	private static final int domainBits = 3;
+	private static final int domainsPerWord = 64 / domainBits;
+	private static final int domainMask = (1 << domainBits) - 1;
+	// log2 of each domain size, log2(0) taken as 0
+	private static final double[] logSizes = new double[domainBits + 1];
+	static {
+		for (int s = 1; s < logSizes.length; s++) {
+			logSizes[s] = Math.log(s) / Math.log(2);
+		}
+	}
+
+	final int[] min;
+	final int[] max;
+	final int[] mass;
+	final int[] current;
+	final byte[] flags;
+	private final byte[] kinds;
+	private final int[] unsolved;
+	private final long[] domains;
+	private final int numBridges;
+	private final int firstBridge;
+	// Number of bridges with each domain size
+	private final int[] domainSizes;
+	// Zobrist hash of all the bridge domains
+	private long hash;
+	// Levels each tracker's values were derived from, null unless explaining
+	private long[] reasons;
+	// Levels added to the reasons of whatever is changed next
+	private long cause;
+	// Tracker being updated whose scope reasons are the cause, worked out
+	// when it first changes something, null if the cause is set
+	private Tracker updating;
+
+	private Trail trail;
+
+	/**
+	 * @param numSlots number of trackers
+	 * @param firstBridge slot of the first bridge
+	 * @param numBridges number of bridges
+	 */
+	public TrackerData(int numSlots, int firstBridge, int numBridges) {
+		min = new int[numSlots];
+		max = new int[numSlots];
+		mass = new int[numSlots];
+		current = new int[numSlots];
+		flags = new byte[numSlots];
+		kinds = new byte[numSlots];
+		unsolved = new int[numKinds];
+		domains = new long[(numBridges + domainsPerWord - 1) / domainsPerWord];
+		this.numBridges = numBridges;
+		this.firstBridge = firstBridge;
+		reasons = null;
+		cause = 0;
+		updating = null;
+		domainSizes = new int[domainBits + 1];
+		trail = null;
+		reset();
+	}
+
+	/**
+	 * Attach the undo log which records all subsequent changes
+	 * @param t Trail to record changes on (null to stop recording)
+	 */
+	public void setTrail(Trail t) {
+		trail = t;
+	}
+
+	/**
+	 * Set every tracker back to zero scores, valid and unsolved,
+	 * without recording the changes
+	 */
+	public void reset() {
+		Arrays.fill(min, 0);
+		Arrays.fill(max, 0);
+		Arrays.fill(mass, 0);
+		Arrays.fill(current, 0);
+		Arrays.fill(flags, (byte) VALID);
+		Arrays.fill(unsolved, 0);
+		for (byte k : kinds) {
+			unsolved[k]++;
+		}
+		// A bridge with no domain set can only be 0
+		long zeroOnly = 0;
+		for (int i = 0; i < domainsPerWord; i++) {
+			zeroOnly |= 1L << (i * domainBits);
+		}
+		Arrays.fill(domains, zeroOnly);
+		Arrays.fill(domainSizes, 0);
+		domainSizes[1] = numBridges;
+		if (reasons != null) {
+			Arrays.fill(reasons, 0);
+		}
+		cause = 0;
+		updating = null;
+		hash = 0;
+		for (int b = 0; b < numBridges; b++) {
+			hash ^= zobrist(b, 1);
+		}
+	}
+
+	/**
+	 * The Zobrist key of a bridge having a domain, the same for every
+	 * state so that equal domains hash equally. Keys are mixed from the
+	 * bridge index and domain (the SplitMix64 finalizer) rather than drawn
+	 * from a table.
+	 * @param b bridge index
+	 * @param domain bridge domain
+	 * @return the key
+	 */
+	static long zobrist(int b, int domain) {
+		long z = (b * 8L + domain + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Start or stop keeping the reasons for the tracker values. Values
+	 * there already are taken as given, depending on no decision.
+	 * @param on true to keep reasons
+	 */
+	void setExplaining(boolean on) {
+		reasons = on ? new long[min.length] : null;
+		cause = 0;
+		updating = null;
+	}
+
+	/** @return true if the reasons for the tracker values are kept */
+	boolean isExplaining() {
+		return reasons != null;
+	}
+
+	/**
+	 * @param levels levels added to the reasons of the trackers changed
+	 *               from now on
+	 */
+	void setCause(long levels) {
+		cause = levels;
+		updating = null;
+	}
+	/**
+	 * @param t tracker about to be updated, the reasons of what it reads
+	 *          being added to the reasons of whatever it changes
+	 */
+	void setCause(Tracker t) {
+		updating = t;
+	}
+	/** @return levels added to the reasons of the trackers changed */
+	long getCause() {
+		if (updating != null) {
+			cause = updating.getScopeReasons();
+			updating = null;
+		}
+		return cause;
+	}
+
+	/**
+	 * @param slot tracker slot
+	 * @return levels the values of the tracker were derived from,
+	 *         0 if reasons aren't kept
+	 */
+	long getReasons(int slot) {
+		return (reasons == null) ? 0 : reasons[slot];
+	}
+
+	// A tracker changed, so its values also depend on the cause
+	private void blame(int slot) {
+		if (reasons == null) {
+			return;
+		}
+		long r = reasons[slot] | getCause();
+		if (r != reasons[slot]) {
+			if ((int) r != (int) reasons[slot]) {
+				record(slot, FIELD_REASONS_LO, (int) reasons[slot]);
+			}
+			if ((int) (r >>> 32) != (int) (reasons[slot] >>> 32)) {
+				record(slot, FIELD_REASONS_HI, (int) (reasons[slot] >>> 32));
+			}
+			reasons[slot] = r;
+		}
+	}
+
+	/**
+	 * @param slot tracker slot
+	 * @param kind which count the tracker is in while unsolved
+	 */
+	void setKind(int slot, int kind) {
+		if (!isSet(slot, SOLVED)) {
+			unsolved[kinds[slot]]--;
+			unsolved[kind]++;
+		}
+		kinds[slot] = (byte) kind;
+	}
+
+	/**
+	 * @param kind KIND_BRIDGE, KIND_ISLAND or KIND_CONSTRAINT
+	 * @return number of unsolved trackers of the kind
+	 */
+	int getNumUnsolved(int kind) {
+		return unsolved[kind];
+	}
+
+	/**
+	 * @return log2 of the product of the bridge domain sizes, empty
+	 *         domains counting as size 1
+	 */
+	double getLogSearchSpace() {
+		double size = 0;
+		for (int s = 2; s < domainSizes.length; s++) {
+			size += domainSizes[s] * logSizes[s];
+		}
+		return size;
+	}
+
+	/** @return hash of the domains of all the bridges */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * @param lo lowest score
+	 * @param hi highest score
+	 * @return domain allowing the scores lo to hi, empty if lo > hi
+	 */
+	static int interval(int lo, int hi) {
+		lo = Math.max(lo, 0);
+		hi = Math.min(hi, TrackerBridge.maxWeight);
+		if (lo > hi) {
+			return 0;
+		}
+		return ((1 << (hi + 1)) - 1) & ~((1 << lo) - 1);
+	}
+	/**
+	 * @param domain bridge domain
+	 * @return lowest score in the domain, more than maxWeight if empty
+	 */
+	static int domainMin(int domain) {
+		return (domain == 0) ? TrackerBridge.maxWeight + 1 : Integer.numberOfTrailingZeros(domain);
+	}
+	/**
+	 * @param domain bridge domain
+	 * @return highest score in the domain, -1 if empty
+	 */
+	static int domainMax(int domain) {
+		return 31 - Integer.numberOfLeadingZeros(domain);
+	}
+
+	/**
+	 * @param b bridge index
+	 * @return domain of the bridge
+	 */
+	int getDomain(int b) {
+		return (int) (domains[b / domainsPerWord] >>> ((b % domainsPerWord) * domainBits)) & domainMask;
+	}
+
+	/**
+	 * @param b bridge index
+	 * @param domain new domain of the bridge
+	 */
+	void setDomain(int b, int domain) {
+		int old = getDomain(b);
+		if (old != domain) {
+			record(b, FIELD_DOMAIN, old);
+			writeDomain(b, domain);
+			blame(firstBridge + b);
+		}
+	}
+
+	private void writeDomain(int b, int domain) {
+		int old = getDomain(b);
+		hash ^= zobrist(b, old) ^ zobrist(b, domain);
+		domainSizes[Integer.bitCount(old)]--;
+		domainSizes[Integer.bitCount(domain)]++;
+		int shift = (b % domainsPerWord) * domainBits;
+		int w = b / domainsPerWord;
+		domains[w] = (domains[w] & ~((long) domainMask << shift)) | ((long) domain << shift);
+	}
+
+	/**
+	 * Set an int field of a tracker
+	 * @param slot tracker slot
+	 * @param field FIELD_MIN, FIELD_MAX, FIELD_MASS or FIELD_CURRENT
+	 * @param v new value
+	 */
+	void set(int slot, int field, int v) {
+		int[] values = values(field);
+		if (values[slot] != v) {
+			record(slot, field, values[slot]);
+			values[slot] = v;
+			blame(slot);
+		}
+	}
+
+	/**
+	 * @param slot tracker slot
+	 * @param flag flag bit
+	 * @return true if the flag is set
+	 */
+	boolean isSet(int slot, int flag) {
+		return (flags[slot] & flag) != 0;
+	}
+
+	/**
+	 * Set or clear a flag of a tracker
+	 * @param slot tracker slot
+	 * @param flag flag bit
+	 * @param on true to set the flag
+	 */
+	void setFlag(int slot, int flag, boolean on) {
+		int f = on ? (flags[slot] | flag) : (flags[slot] & ~flag);
+		if (f != flags[slot]) {
+			record(slot, FIELD_FLAGS, flags[slot]);
+			writeFlags(slot, f);
+			blame(slot);
+		}
+	}
+
+	private void writeFlags(int slot, int f) {
+		int change = (f & SOLVED) - (flags[slot] & SOLVED);
+		unsolved[kinds[slot]] -= change;
+		flags[slot] = (byte) f;
+	}
+
+	private int[] values(int field) {
+		switch (field) {
+		case FIELD_MIN:
+			return min;
+		case FIELD_MAX:
+			return max;
+		case FIELD_MASS:
+			return mass;
+		case FIELD_CURRENT:
+			return current;
+		default:
+			throw new IllegalArgumentException("Unknown tracker field " + field);
+		}
+	}
+
+	private void record(int slot, int field, int oldValue) {
+		if (trail != null) {
+			trail.record(this, slot * numFields + field, oldValue);
+		}
+	}
+
+	@Override
+	public int swapField(int code, int v) {
+		int slot = code / numFields;
+		int field = code % numFields;
+		int old;
+		if (field == FIELD_DOMAIN) {
+			old = getDomain(slot);
+			writeDomain(slot, v);
+		}
+		else if (field == FIELD_FLAGS) {
+			old = flags[slot];
+			writeFlags(slot, v);
+		}
+		else if ((field == FIELD_REASONS_LO) || (field == FIELD_REASONS_HI)) {
+			old = swapReasons(slot, field == FIELD_REASONS_HI, v);
+		}
+		else {
+			int[] values = values(field);
+			old = values[slot];
+			values[slot] = v;
+		}
+		return old;
+	}
+
+	private int swapReasons(int slot, boolean high, int v) {
+		if (reasons == null) {
+			// Recorded before reasons stopped being kept
+			return v;
+		}
+		long r = reasons[slot];
+		if (high) {
+			reasons[slot] = (r & 0xffffffffL) | ((long) v << 32);
+			return (int) (r >>> 32);
+		}
+		reasons[slot] = (r & 0xffffffff00000000L) | (v & 0xffffffffL);
+		return (int) r;
+	}
+}
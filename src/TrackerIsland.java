@@ -1,36 +1,34 @@
 import java.util.ArrayList;
-import java.util.OptionalInt;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class TrackerIsland extends Tracker {
 
+	private static final Helper classLog = Helper.forUnit("TrackerIsland");
+	private static final Helper updateLog = Helper.forUnit("TrackerIsland::Update");
+	private static final Helper neighbourLog = Helper.forUnit("maxScoreExcludingNeighborIsland");
+
 	public IslandBase island;
-	
-	int numUnsolvedBridges;
 
 		
 	public TrackerIsland(){
-		thisLog = new Helper("TrackerIsland");
+		thisLog = classLog;
 		entity = "Island";
 	}
 	
-	public void init(IslandBase s, SolverStatus status){
+	public void init(IslandBase s, SolverState st){
 		island = s;
-		solverStatus = status;
+		state = st;
+		solverStatus = st.getStatus();
 		int limit = island.bridges.size() * TrackerBridge.maxWeight;
-		OptionalInt lower = island.constraints.stream()
-				.filter(c -> c.hasTarget())
-				.mapToInt(t -> t.Target()).min(); 
-		if (lower.isPresent()) {
-			limit = Math.min(limit, lower.getAsInt());
+		for (Constraint c : island.constraints) {
+			if (c.hasTarget()) {
+				limit = Math.min(limit, c.Target());
+			}
 		}
-		maxPossibleScore = limit;
-		minPossibleScore = 1;
-	
-		// contiguous group starts with a unique id;
-		groupId = this.uid;
+		assignMax(limit);
+		assignMin(1);
 	}	
 	
 	/*
@@ -45,148 +43,146 @@ public class TrackerIsland extends Tracker {
 	public boolean update() {
 		
 		// Depends on bridges
-		Helper thisLog = new Helper("TrackerIsland::Update");
-		thisLog.debugIf(thisLog.interest(this.island));
-		thisLog.Log( Dump());
+		boolean debug = updateLog.isActive() || updateLog.interest(this.island);
+		if (debug) {
+			updateLog.Log(true, Dump());
+		}
 	
-		if (solved) {
+		if (isSolved()) {
 			// Cannot update solved islands
 			return false;
 		}
 		boolean changed = false;
 		
 		// Make sure score reflects latest info
-		currentScore = (int) island.bridges.stream()
-				.mapToInt(b -> b.tracker.massAllocated).sum();	
-		if (!massIsKnown) {
-			massAllocated = currentScore;	
+		int known = 0;
+		int maxSum = 0;
+		int minSum = 0;
+		int unsolved = 0;
+		for (Bridge b : island.bridges) {
+			TrackerBridge tb = state.tracker(b);
+			known += tb.getKnownScore();
+			maxSum += tb.getMaxPossibleScore();
+			minSum += tb.getMinPossibleScore();
+			if (!tb.isSolved()) {
+				unsolved++;
+			}
+		}
+		assignCurrent(known);
+		if (!isMassKnown()) {
+			assignMass(getCurrentScore());
 		}
-		int bscore = Math.min( 
-				maxPossibleScore,
-				(int) island.bridges.stream()
-				.mapToInt(s -> s.tracker.maxPossibleScore).sum());
-		thisLog.Log("Bscore = " + bscore);
-		if (bscore != maxPossibleScore) {
-			maxPossibleScore = bscore;
+		int bscore = Math.min(getMaxPossibleScore(), maxSum);
+		updateLog.Log(debug, "Bscore = %d", bscore);
+		if (bscore != getMaxPossibleScore()) {
+			assignMax(bscore);
 			changed = true;
 		}
-		bscore = Math.max( minPossibleScore,
-				(int) island.bridges.stream()
-					.mapToLong(s ->  s.tracker.minPossibleScore).sum());
-		if (bscore != minPossibleScore) {
-			minPossibleScore = bscore;
+		bscore = Math.max(getMinPossibleScore(), minSum);
+		if (bscore != getMinPossibleScore()) {
+			assignMin(bscore);
 			changed = true;
 		}
 
 		// Now check if solved.
-		thisLog.Log("Unsolved bridges " +
-				island.bridges.stream()
-					.filter(m -> !m.tracker.solved)
-					.count());
+		updateLog.Log(debug, "Unsolved bridges %d", unsolved);
 		
 		// Check there are some remaining unsolved bridges
-		if ((maxPossibleScore == minPossibleScore) 
-				&& (massAllocated == maxPossibleScore)) {
-			massIsKnown = true;
-			solved = true;
+		if ((getMaxPossibleScore() == getMinPossibleScore()) 
+				&& (getKnownScore() == getMaxPossibleScore())) {
+			assignMassKnown(true);
+			assignSolved(true);
 		}
 		// Check there are some remaining unsolved bridges
-		else if (island.bridges.stream()
-			.filter(m -> !m.tracker.solved)
-			.count() == 0) {
-			thisLog.Log(
-					String.format("IN ISLAND: SOLVED: %s", Dump()));
-			solved = true;
+		else if (unsolved == 0) {
+			if (debug) {
+				updateLog.Log(true, "IN ISLAND: SOLVED: " + Dump());
+			}
+			assignSolved(true);
 		}
 		
 		// Check mass allocated matches the expected
-		else if ((massIsKnown) && (massAllocated == currentScore)){
-					solved = true;
+		else if ((isMassKnown()) && (getKnownScore() == getCurrentScore())){
+					assignSolved(true);
 		}
 
-		if (solved) {
-			maxPossibleScore = currentScore;
-			minPossibleScore = currentScore;
-			massIsKnown = true;
+		if (isSolved()) {
+			assignMax(getCurrentScore());
+			assignMin(getCurrentScore());
+			assignMassKnown(true);
 			for (Bridge b : island.bridges) {
-				b.tracker.freezeFinalScore(b.tracker.currentScore);
+				state.tracker(b).freezeFinalScore(state.tracker(b).getCurrentScore());
 			}
 			changed = true;
 		}
-		valid = isValid();
-		if (!valid) {
-			Helper.Print("IslandTracker", "Island status = false ");
+		assignValid(isValid());
+		if (!isMarkedValid()) {
+			thisLog.Log("Island status = false ");
 			solverStatus.setValid(false);
 		}
-		if (solved) {
-			solverStatus.decrementUnsolvedIslands();
-		}
 		if (changed) {
 			// Propagate scores to constraint sets
 			for (Constraint c : island.constraints) {
-				c.tracker.update();
+				state.tracker(c).scheduleUpdate();
 			}
 			
 		}
-		updateGroupId();
-		thisLog.Log("On Exit:" + Dump());
+		if (debug) {
+			updateLog.Log(true, "On Exit:" + Dump());
+		}
 		return changed;
 	}
 	
+	public long getScopeReasons() {
+		long r = getReasons();
+		for (Bridge b : island.bridges) {
+			r |= state.tracker(b).getReasons();
+		}
+		return r;
+	}
+	
 	public boolean isValid() {
-		if (minPossibleScore > maxPossibleScore) {
+		if (getMinPossibleScore() > getMaxPossibleScore()) {
 			return false;
 		}
-		if (massAllocated > maxPossibleScore) {
+		if (getKnownScore() > getMaxPossibleScore()) {
 			return false;
 		}
-		if (solved) {
-			if (massAllocated != currentScore) {
+		if (isSolved()) {
+			if (getKnownScore() != getCurrentScore()) {
 				return false;
 			}
 		}
 		return true;
 	}
 	
-	public int updateGroupId() {
-		OptionalInt v = island.bridges.stream()
-			.filter(b -> !b.tracker.zeroScoreAvailable())
-			.mapToInt( i -> Math.min(i.fromIsland.tracker.groupId, i.toIsland.tracker.groupId))
-			.min();
-		if (v.isPresent()) {
-			if (groupId != v.getAsInt()) {
-				solverStatus.removeGraphExemplar(this);
-				groupId = v.getAsInt();
-			}
-			// Propagate to all other connected islands
-			island.bridges.stream()
-				.filter(b -> !b.tracker.zeroScoreAvailable())
-				.filter(b -> b.otherEndIsland(island).tracker.groupId != groupId)
-				.forEach( b -> b.otherEndIsland(island).tracker.updateGroupId());
-			
-		}
-		return groupId;
+	/**
+	 * Islands in the same group are connected by bridges that must be used
+	 * @return index of the island representing this island's group
+	 */
+	public int getGroupId() {
+		return state.getConnectivity().find(island.index);
 	}
 	
 	public boolean fixMass(int v) {
-		if ((minPossibleScore == v)
-				&& maxPossibleScore == v) {
+		if ((getMinPossibleScore() == v)
+				&& getMaxPossibleScore() == v) {
 			return false;
 		}
-		minPossibleScore = v;
-		maxPossibleScore = v;
+		assignMin(v);
+		assignMax(v);
 		return true;
 	}
 	
 	public boolean increaseMinPossible(int v) {
-		if (v <= minPossibleScore) {
+		if (v <= getMinPossibleScore()) {
 			return false;
 		}
-		if (v > maxPossibleScore) {
-			minPossibleScore = maxPossibleScore;
+		if (v > getMaxPossibleScore()) {
+			assignMin(getMaxPossibleScore());
 			return false;
 		}
-		minPossibleScore = v;
+		assignMin(v);
 		return true;
 		
 	}
@@ -194,58 +190,57 @@ public class TrackerIsland extends Tracker {
 	public int maxScoreExcludingNeighborIsland(IslandBase neighbour) {
 		// Want to count all possible bridges to other islands,
 		// but only the minimum bridges to the neighbor
-		Helper thisLog = new Helper("maxScoreExcludingNeighborIsland");
-		thisLog.debugIf( neighbour.matchPos(0, 1));
-		thisLog.Log("Checking neighbour: " + neighbour.toString());
-		island.bridges.stream().forEach(b -> thisLog.Log( b.toString() ));
-		
-		thisLog.Log("Non HoldOut score " + 
-				island.bridges.stream()
-					.mapToInt(s -> s.tracker.minPossibleScore ).sum());
-		thisLog.Log("Bridges "); 	
-		island.bridges.stream()
-				.forEach(s -> thisLog.Log(s.tracker.Dump()));
-		
-		int bNeighbour = 
-				(int) island.bridges.stream()
-						.filter(b -> Tracker.sameTracker(b.toIsland.tracker, neighbour.tracker))
-						.filter(b -> Tracker.sameTracker(b.fromIsland.tracker, neighbour.tracker))
-						.mapToInt(s -> s.tracker.minPossibleScore ).sum();
-		thisLog.Log("bNeighbour " + bNeighbour);
-		int bOthers = 
-				(int) island.bridges.stream()
-						.filter(b -> neighbour.tracker.sameTracker(b.toIsland.tracker, neighbour.tracker))
-						.filter(b -> neighbour.tracker.sameTracker(b.fromIsland.tracker, neighbour.tracker))
-						.mapToInt(s -> s.tracker.maxPossibleScore ).sum();
-		thisLog.Log("Num Others : " + 
-				island.bridges.stream()
-					.filter(b -> neighbour.tracker.sameTracker(b.toIsland.tracker, neighbour.tracker))
-					.filter(b -> neighbour.tracker.sameTracker(b.fromIsland.tracker, neighbour.tracker))
-					.count());
-		
-		thisLog.Log("bOthers " + bOthers);
-		
-		thisLog.Log("Finished");
+		boolean debug = neighbourLog.isActive() || neighbour.matchPos(0, 1);
+		TrackerIsland tn = state.tracker(neighbour);
+		int minSum = 0;
+		int bNeighbour = 0;
+		int bOthers = 0;
+		int numOthers = 0;
+		for (Bridge b : island.bridges) {
+			TrackerBridge tb = state.tracker(b);
+			minSum += tb.getMinPossibleScore();
+			if (Tracker.sameTracker(state.tracker(b.toIsland), tn)
+					&& Tracker.sameTracker(state.tracker(b.fromIsland), tn)) {
+				bNeighbour += tb.getMinPossibleScore();
+				bOthers += tb.getMaxPossibleScore();
+				numOthers++;
+			}
+		}
+		if (debug) {
+			neighbourLog.Log(true, "Checking neighbour: " + neighbour.toString());
+			for (Bridge b : island.bridges) {
+				neighbourLog.Log(true, b.toString());
+			}
+			neighbourLog.Log(true, "Non HoldOut score " + minSum);
+			neighbourLog.Log(true, "Bridges ");
+			for (Bridge b : island.bridges) {
+				neighbourLog.Log(true, state.tracker(b).Dump());
+			}
+			neighbourLog.Log(true, "bNeighbour " + bNeighbour);
+			neighbourLog.Log(true, "Num Others : " + numOthers);
+			neighbourLog.Log(true, "bOthers " + bOthers);
+			neighbourLog.Log(true, "Finished");
+		}
 		return bNeighbour + bOthers;
 	}
 	
 	
 	public String getGroupString() {
-		return String.format("%s (G %d)", island.id, this.groupId);
+		return String.format("%s (G %d)", island.id, getGroupId());
 	}
 	
 	public String asString() {
 		int numUnsolvedBridges = (int) island.bridges.stream()
-				.filter(b -> !b.tracker.isSolved()).count();
+				.filter(b -> !state.tracker(b).isSolved()).count();
 		return String.format(
 		 "Island: %s %s maxP %d minP %d   Unresolved Bridges %d,  massAlloc %d group %d\n", 
 				island.id,
-				solved ? "Solved" : "NotSolved",
-				maxPossibleScore, 
-				minPossibleScore,
+				isSolved() ? "Solved" : "NotSolved",
+				getMaxPossibleScore(), 
+				getMinPossibleScore(),
 				numUnsolvedBridges,
-				massAllocated, 
-				groupId
+				getKnownScore(), 
+				getGroupId()
 				);
 		
 	}
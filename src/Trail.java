@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+/**
+ * Undo log (trail) for the tracker state of a solution attempt.
+ *
+ * Rather than snapshot every tracker at each checkpoint, each tracker
+ * records the old value of a field on the trail at the moment the field
+ * changes. A checkpoint is then just a mark in the trail, and reverting
+ * to a checkpoint undoes the entries recorded since the mark. Both cost
+ * time proportional to the number of changes, not to the size of the grid.
+ *
+ * Entries are undone by exchanging the value on the trail with the value
+ * in the tracker, so the same entries can be walked back and forward to
+ * replay the checkpoints of a completed solution.
+ *
+ * @author legge
+ *
+ */
+public class Trail {
+
+	private static final int initialCapacity = 1024;
+
+	// Parallel arrays of trail entries
+	private Undoable[] trackers;
+	private int[] fields;
+	private int[] values;
+	private int size;
+
+	// Replay position; equal to size except while replaying
+	private int position;
+
+	// marks[k-1] is the trail size when checkpoint k was taken
+	private int[] marks;
+	private int numMarks;
+
+	public Trail() {
+		trackers = new Undoable[initialCapacity];
+		fields = new int[initialCapacity];
+		values = new int[initialCapacity];
+		marks = new int[64];
+		reset();
+	}
+
+	/**
+	 * Discard all entries and checkpoints
+	 */
+	public void reset() {
+		Arrays.fill(trackers, 0, size, null);
+		size = 0;
+		position = 0;
+		numMarks = 0;
+	}
+
+	/**
+	 * @return the id of the most recent checkpoint (0 if none)
+	 */
+	public int getCheckpoint() {
+		return numMarks;
+	}
+
+	/**
+	 * @return number of entries currently on the trail
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Take a new checkpoint at the current end of the trail
+	 * @return id of the checkpoint
+	 */
+	public int checkpoint() {
+		replayToEnd();
+		if (numMarks == marks.length) {
+			marks = Arrays.copyOf(marks, numMarks * 2);
+		}
+		marks[numMarks++] = size;
+		return numMarks;
+	}
+
+	/**
+	 * Record the old value of a tracker field that is about to change.
+	 * Nothing is recorded before the first checkpoint since there is
+	 * nothing to revert to.
+	 * @param t tracker (or other undoable) being changed
+	 * @param field field code (see Tracker)
+	 * @param oldValue value of the field before the change
+	 */
+	public void record(Undoable t, int field, int oldValue) {
+		if (numMarks == 0) {
+			return;
+		}
+		if (size == trackers.length) {
+			int capacity = size * 2;
+			trackers = Arrays.copyOf(trackers, capacity);
+			fields = Arrays.copyOf(fields, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		trackers[size] = t;
+		fields[size] = field;
+		values[size] = oldValue;
+		size++;
+		position = size;
+	}
+
+	/**
+	 * Revert all trackers to the state at the given checkpoint.
+	 * Entries and checkpoints after it are discarded, the checkpoint
+	 * itself is kept so it can be reverted to again.
+	 * @param checkpoint id of the checkpoint
+	 * @return true if reverted, false if the checkpoint doesn't exist
+	 */
+	public boolean revertTo(int checkpoint) {
+		if ((checkpoint < 1) || (checkpoint > numMarks)) {
+			return false;
+		}
+		replayToEnd();
+		int mark = marks[checkpoint-1];
+		while (size > mark) {
+			size--;
+			trackers[size].swapField(fields[size], values[size]);
+			trackers[size] = null;
+		}
+		position = size;
+		numMarks = checkpoint;
+		return true;
+	}
+
+	/**
+	 * Move the trackers to the state at a given checkpoint, keeping all
+	 * entries so that later checkpoints can still be visited.
+	 * @param checkpoint id of the checkpoint
+	 * @return true if the checkpoint exists, false otherwise
+	 */
+	public boolean replayTo(int checkpoint) {
+		if ((checkpoint < 1) || (checkpoint > numMarks)) {
+			return false;
+		}
+		int target = marks[checkpoint-1];
+		while (position > target) {
+			position--;
+			values[position] = trackers[position].swapField(fields[position], values[position]);
+		}
+		while (position < target) {
+			values[position] = trackers[position].swapField(fields[position], values[position]);
+			position++;
+		}
+		return true;
+	}
+
+	// Bring the trackers back to the latest state after a replay
+	private void replayToEnd() {
+		while (position < size) {
+			values[position] = trackers[position].swapField(fields[position], values[position]);
+			position++;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache of the search states proven to have no solution.
+ *
+ * The search often reaches the same bridge assignment by branching on the
+ * constraints in a different order. Each state is identified by the
+ * Zobrist hash of its bridge domains, and once the whole subtree below a
+ * state has been searched without finding a solution the hash is stored
+ * here, so that the subtree isn't searched again.
+ *
+ * The table has a fixed number of buckets of two entries. The first entry
+ * of a bucket keeps the state whose subtree took the most work to search
+ * (depth preferred), the second always takes the newest state. Entries
+ * are only hashes, written atomically, so one table can be shared by all
+ * the branches of a parallel search.
+ *
+ * @author legge
+ *
+ */
+public class TranspositionTable {
+
+	// Per entry: the state hash (0 for empty) and the work done to prove it dead
+	private final AtomicLongArray keys;
+	private final AtomicLongArray work;
+	private final int bucketMask;
+
+	private final AtomicLong numHits;
+	private final AtomicLong numStores;
+
+	/**
+	 * @param size number of entries, rounded up to a power of two
+	 */
+	public TranspositionTable(int size) {
+		int entries = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+		keys = new AtomicLongArray(entries);
+		work = new AtomicLongArray(entries);
+		bucketMask = entries / 2 - 1;
+		numHits = new AtomicLong();
+		numStores = new AtomicLong();
+	}
+
+	private int bucket(long hash) {
+		return ((int) (hash ^ (hash >>> 32)) & bucketMask) * 2;
+	}
+
+	/**
+	 * @param hash state hash
+	 * @return true if the state is known to have no solution
+	 */
+	public boolean isDead(long hash) {
+		int i = bucket(hash);
+		if ((hash != 0) && ((keys.get(i) == hash) || (keys.get(i+1) == hash))) {
+			numHits.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record that a state has no solution
+	 * @param hash state hash
+	 * @param effort work done searching below the state, e.g. search nodes
+	 */
+	public void markDead(long hash, long effort) {
+		if (hash == 0) {
+			return;
+		}
+		int i = bucket(hash);
+		if ((keys.get(i) == hash) || (keys.get(i+1) == hash)) {
+			return;
+		}
+		numStores.incrementAndGet();
+		if (effort >= work.get(i)) {
+			// Keep the entry pushed out in the second place
+			keys.set(i+1, keys.get(i));
+			work.set(i+1, work.get(i));
+			keys.set(i, hash);
+			work.set(i, effort);
+		}
+		else {
+			keys.set(i+1, hash);
+			work.set(i+1, effort);
+		}
+	}
+
+	/**
+	 * Empty the table
+	 */
+	public void clear() {
+		for (int i = 0; i < keys.length(); i++) {
+			keys.set(i, 0);
+			work.set(i, 0);
+		}
+		numHits.set(0);
+		numStores.set(0);
+	}
+
+	/** @return number of entries */
+	public int size() {
+		return keys.length();
+	}
+	/** @return number of lookups that found a dead state */
+	public long getNumHits() {
+		return numHits.get();
+	}
+	/** @return number of dead states stored */
+	public long getNumStores() {
+		return numStores.get();
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * Anything whose changes are recorded on a Trail.
+ *
+ * Each change is recorded as a field code and the old value of the field,
+ * and is undone (or redone) by exchanging the value back into the field.
+ *
+ * @author legge
+ *
+ */
+public interface Undoable {
+
+	/**
+	 * Exchange the value of a field with the value held on the trail,
+	 * without recording the change.
+	 * @param field field code
+	 * @param v value to place in the field
+	 * @return the value the field held before the exchange
+	 */
+	int swapField(int field, int v);
+}
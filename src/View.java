@@ -217,6 +217,7 @@ public class View implements Runnable {
 		 */
 		private static final long serialVersionUID = 1L;
 		private GridDefinition grid;
+		private SolverState state;
 		private int rowCount, columnCount;
 		private int xOffset, yOffset;
 		private int cellHeight, cellWidth;
@@ -227,6 +228,7 @@ public class View implements Runnable {
 	        super(new BorderLayout());
 	        id = UniqueId.getUid();
 	        this.grid = model.grid;
+	        this.state = model.getState();
 	        this.rowCount = grid.getNumRows();
 			this.columnCount = grid.getNumCols();
 	        this.setVisible(true);
@@ -238,6 +240,7 @@ public class View implements Runnable {
 	        super(new BorderLayout());
 	        id = UniqueId.getUid();
 	        this.grid = vconfig.model.grid;
+	        this.state = vconfig.model.getState();
 	        this.rowCount = grid.getNumRows();
 			this.columnCount = grid.getNumCols();
 	        this.setVisible(true);
@@ -328,26 +331,26 @@ public class View implements Runnable {
 										);
 					if (grid.get(row,col).isSolid()) {
 						icell.solid(cellWidth /2, cellHeight /2,
-								grid.get(row,col).getLabel());
-						if (grid.get(row, col).tracker.isSolved()) {
+								grid.get(row,col).getLabel(state));
+						if (state.tracker(grid.get(row, col)).isSolved()) {
 								icell.setColor(Color.CYAN);
 						}
 					}
 					else if (grid.get(row,col).isConstraint()) {
 						icell.constraint(cellWidth, cellHeight/2,
-								grid.get(row,col).getLabel());
+								grid.get(row,col).getLabel(state));
 					}
 					else {
 						continue;
 					}
 					ArrayList<Bridge> bs = grid.get(row, col).getBridgesOut();
 					for (Bridge b : bs ) {
-						Color lineColor = b.tracker.isSolved() ? Color.RED : Color.BLACK;
+						Color lineColor = state.tracker(b).isSolved() ? Color.RED : Color.BLACK;
 						Stroke style = solid;
 					
 						ArrayList<Integer> r = new ArrayList<Integer>();
-						if (b.tracker.minPossibleScore == 0) {
-							if (b.tracker.isSolved()) {
+						if (state.tracker(b).getMinPossibleScore() == 0) {
+							if (state.tracker(b).isSolved()) {
 								r.add(2);
 								style = dotted;
 								lineColor = Color.LIGHT_GRAY;
@@ -358,11 +361,11 @@ public class View implements Runnable {
 								lineColor = Color.BLACK;
 							}
 						}
-						if (b.tracker.minPossibleScore == 1) {
+						if (state.tracker(b).getMinPossibleScore() == 1) {
 							r.add(2);
 							style = solid;
 						}
-						if (b.tracker.minPossibleScore == 2) {
+						if (state.tracker(b).getMinPossibleScore() == 2) {
 							r.add(1);
 							r.add(3);
 							style = solid;
@@ -388,7 +391,7 @@ public class View implements Runnable {
 						}
 					}
 				
-					icell.addLabel(grid.get(row, col).getLabel(), grid.get(row,col).isSolid());			
+					icell.addLabel(grid.get(row, col).getLabel(state), grid.get(row,col).isSolid());			
 					images.add(icell);
 				}
 			}